@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.regulators;
+
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Stop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Input data shared by the benchmarks.
+ */
+class BenchmarkData {
+
+    // ******************** Methods *******************************************
+    /**
+     * Returns the given number of evenly distributed stops with colors around
+     * the hue circle, so neighbouring stops always differ.
+     */
+    static List<Stop> createStops(final int COUNT) {
+        List<Stop> stops = new ArrayList<>(COUNT);
+        for (int i = 0 ; i < COUNT ; i++) {
+            double fraction = COUNT == 1 ? 0.0 : i / (double) (COUNT - 1);
+            stops.add(new Stop(fraction, Color.hsb(fraction * 360.0, 1.0, 1.0, 0.5 + 0.5 * fraction)));
+        }
+        return stops;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.regulators;
+
+import javafx.scene.image.Image;
+import javafx.scene.paint.Stop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the rasterization of a ConicalGradient. The image benchmarks
+ * create a new gradient for every invocation, like a control does when the
+ * stops change, so they include building the lookup table. The rotation
+ * benchmark measures redrawing an existing gradient after a rotation, which
+ * rebuilds the lookup table from the recalculated stops.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConicalGradientBenchmark {
+    @Param({ "64", "256", "1024" })
+    public  int             size;
+    @Param({ "2", "8", "64" })
+    public  int             stopCount;
+    private List<Stop>      stops;
+    private ConicalGradient rotatedGradient;
+
+
+    @Setup public void setup() {
+        stops           = BenchmarkData.createStops(stopCount);
+        rotatedGradient = new ConicalGradient(stops);
+        rotatedGradient.getRoundImage(size);
+    }
+
+
+    // ******************** Benchmarks ****************************************
+    @Benchmark public Image getImage() {
+        return new ConicalGradient(stops).getImage(size, size);
+    }
+
+    @Benchmark public Image getRoundImage() {
+        return new ConicalGradient(stops).getRoundImage(size);
+    }
+
+    @Benchmark public Image recalculateWithAngle() {
+        rotatedGradient.recalculateWithAngle(1.0);
+        return rotatedGradient.getRoundImage(size);
+    }
+}
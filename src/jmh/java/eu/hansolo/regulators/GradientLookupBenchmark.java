@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.regulators;
+
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the color lookup of GradientLookup in both directions. The
+ * positions and colors cycle through a fixed set of values that cover the
+ * whole gradient, so every segment between two stops will be hit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GradientLookupBenchmark {
+    private static final int            VALUES = 1024;
+    private static final int            MASK   = VALUES - 1;
+    private static final int            BATCH  = 100_000;
+    @Param({ "2", "8", "64" })
+    public               int            stopCount;
+    private              GradientLookup lookup;
+    private              double[]       positions;
+    private              Color[]        colors;
+    private              double[]       batchPositions;
+    private              int[]          batchArgbs;
+    private              int            index;
+
+
+    @Setup public void setup() {
+        lookup    = new GradientLookup(BenchmarkData.createStops(stopCount));
+        lookup.getArgbAt(0.0);
+        positions = new double[VALUES];
+        colors    = new Color[VALUES];
+        for (int i = 0 ; i < VALUES ; i++) {
+            positions[i] = (i * 0.618034) % 1.0;
+            colors[i]    = lookup.getColorAt(positions[i]);
+        }
+        batchPositions = new double[BATCH];
+        batchArgbs     = new int[BATCH];
+        for (int i = 0 ; i < BATCH ; i++) { batchPositions[i] = (i * 0.618034) % 1.0; }
+    }
+
+
+    // ******************** Benchmarks ****************************************
+    @Benchmark public Color getColorAt() {
+        return lookup.getColorAt(positions[index++ & MASK]);
+    }
+
+    @Benchmark public int getArgbAt() {
+        return lookup.getArgbAt(positions[index++ & MASK]);
+    }
+
+    @Benchmark public int[] getArgbAtBatch() {
+        lookup.getArgbAt(batchPositions, batchArgbs, 0, BATCH);
+        return batchArgbs;
+    }
+
+    @Benchmark public double getValueFrom() {
+        return lookup.getValueFrom(colors[index++ & MASK]);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.regulators;
+
+import javafx.scene.paint.Color;
+
+
+/**
+ * Color space in which the colors between two gradient stops will be
+ * interpolated.
+ * SRGB interpolates the gamma encoded components like JavaFX does, which
+ * makes the mid tones between saturated colors dark and muddy. LINEAR_RGB
+ * interpolates the light intensities and OKLAB interpolates in the
+ * perceptually uniform OKLab space (https://bottosson.github.io/posts/oklab/),
+ * which keeps the brightness and saturation of the mid tones even.
+ * The gradients bake the interpolated colors into lookup tables, so the
+ * color space conversions are only needed to build the tables.
+ */
+public enum ColorInterpolation {
+    SRGB, LINEAR_RGB, OKLAB;
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Returns the color at the given fraction (0 - 1) between the given colors.
+     */
+    public Color interpolate(final Color FROM, final Color TO, final double FRACTION) {
+        if (SRGB == this) return FROM.interpolate(TO, FRACTION);
+        if (FRACTION <= 0 || FROM.equals(TO)) return FROM;
+        if (FRACTION >= 1) return TO;
+        double[] from = toComponents(FROM);
+        double[] to   = toComponents(TO);
+        return toColor(from[0] + (to[0] - from[0]) * FRACTION,
+                       from[1] + (to[1] - from[1]) * FRACTION,
+                       from[2] + (to[2] - from[2]) * FRACTION,
+                       FROM.getOpacity() + (TO.getOpacity() - FROM.getOpacity()) * FRACTION);
+    }
+
+    /**
+     * Returns the three components of the given color in this color space,
+     * the components can be interpolated linearly.
+     */
+    double[] toComponents(final Color COLOR) {
+        double red   = COLOR.getRed();
+        double green = COLOR.getGreen();
+        double blue  = COLOR.getBlue();
+        switch (this) {
+            case LINEAR_RGB: return new double[] { toLinear(red), toLinear(green), toLinear(blue) };
+            case OKLAB     : return linearToOklab(toLinear(red), toLinear(green), toLinear(blue));
+            default        : return new double[] { red, green, blue };
+        }
+    }
+
+    /**
+     * Returns the color with the given components of this color space.
+     */
+    Color toColor(final double C0, final double C1, final double C2, final double OPACITY) {
+        if (SRGB == this) return Color.color(clamp(C0), clamp(C1), clamp(C2), clamp(OPACITY));
+        double[] rgb = toRgb(C0, C1, C2);
+        return Color.color(clamp(rgb[0]), clamp(rgb[1]), clamp(rgb[2]), clamp(OPACITY));
+    }
+
+    /**
+     * Returns the packed non premultiplied ARGB value of the color with the
+     * given components of this color space.
+     */
+    int toArgb(final double C0, final double C1, final double C2, final double OPACITY) {
+        // Called for every entry of a lookup table, so sRGB must not allocate
+        if (SRGB == this) return packArgb(C0, C1, C2, OPACITY);
+        double[] rgb = toRgb(C0, C1, C2);
+        return packArgb(rgb[0], rgb[1], rgb[2], OPACITY);
+    }
+
+    private static int packArgb(final double RED, final double GREEN, final double BLUE, final double OPACITY) {
+        return (int) Math.round(clamp(OPACITY) * 255) << 24 |
+               (int) Math.round(clamp(RED)     * 255) << 16 |
+               (int) Math.round(clamp(GREEN)   * 255) << 8  |
+               (int) Math.round(clamp(BLUE)    * 255);
+    }
+
+    private double[] toRgb(final double C0, final double C1, final double C2) {
+        switch (this) {
+            case LINEAR_RGB: return new double[] { toSrgb(C0), toSrgb(C1), toSrgb(C2) };
+            case OKLAB     :
+                double l = C0 + 0.3963377774 * C1 + 0.2158037573 * C2;
+                double m = C0 - 0.1055613458 * C1 - 0.0638541728 * C2;
+                double s = C0 - 0.0894841775 * C1 - 1.2914855480 * C2;
+                l = l * l * l;
+                m = m * m * m;
+                s = s * s * s;
+                return new double[] { toSrgb( 4.0767416621 * l - 3.3077115913 * m + 0.2309699292 * s),
+                                      toSrgb(-1.2684380046 * l + 2.6097574011 * m - 0.3413193965 * s),
+                                      toSrgb(-0.0041960863 * l - 0.7034186147 * m + 1.7076147010 * s) };
+            default        : return new double[] { C0, C1, C2 };
+        }
+    }
+
+    private static double[] linearToOklab(final double RED, final double GREEN, final double BLUE) {
+        double l = Math.cbrt(0.4122214708 * RED + 0.5363325363 * GREEN + 0.0514459929 * BLUE);
+        double m = Math.cbrt(0.2119034982 * RED + 0.6806995451 * GREEN + 0.1073969566 * BLUE);
+        double s = Math.cbrt(0.0883024619 * RED + 0.2817188376 * GREEN + 0.6299787005 * BLUE);
+        return new double[] { 0.2104542553 * l + 0.7936177850 * m - 0.0040720468 * s,
+                              1.9779984951 * l - 2.4285922050 * m + 0.4505937099 * s,
+                              0.0259040371 * l + 0.7827717662 * m - 0.8086757660 * s };
+    }
+
+    private static double toLinear(final double VALUE) {
+        return VALUE <= 0.04045 ? VALUE / 12.92 : Math.pow((VALUE + 0.055) / 1.055, 2.4);
+    }
+
+    private static double toSrgb(final double VALUE) {
+        return VALUE <= 0.0031308 ? VALUE * 12.92 : 1.055 * Math.pow(VALUE, 1.0 / 2.4) - 0.055;
+    }
+
+    private static double clamp(final double VALUE) {
+        if (VALUE < 0) return 0;
+        if (VALUE > 1) return 1;
+        return VALUE;
+    }
+}
@@ -16,6 +16,10 @@
 
 package eu.hansolo.regulators;
 
+import eu.hansolo.regulators.ConicalGradient.ScaleDirection;
+import javafx.animation.Animation.Status;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.BooleanPropertyBase;
 import javafx.beans.property.DoubleProperty;
@@ -38,17 +42,20 @@ import javafx.scene.layout.CornerRadii;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Region;
 import javafx.scene.paint.Color;
+import javafx.scene.paint.ImagePattern;
 import javafx.scene.paint.Stop;
 import javafx.scene.shape.Arc;
 import javafx.scene.shape.ArcType;
 import javafx.scene.shape.Circle;
-import javafx.scene.shape.Rectangle;
 import javafx.scene.shape.Shape;
 import javafx.scene.shape.StrokeLineCap;
 import javafx.scene.text.Text;
 import javafx.scene.transform.Rotate;
 import javafx.scene.transform.Scale;
+import javafx.util.Duration;
 
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -56,6 +63,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -63,6 +71,7 @@ import java.util.TreeSet;
  */
 public class ColorRegulator extends Region implements RegulatorControl {
     private static final Color          DEFAULT_COLOR    = Color.rgb(66,71,79);
+    private static final Logger         LOGGER           = System.getLogger(ColorRegulator.class.getName());
     private static final double         PREFERRED_WIDTH  = 250;
     private static final double         PREFERRED_HEIGHT = 250;
     private static final double         MINIMUM_WIDTH    = 50;
@@ -71,6 +80,12 @@ public class ColorRegulator extends Region implements RegulatorControl {
     private static final double         MAXIMUM_HEIGHT   = 1024;
     private static final double         MIN_VALUE        = 0.0;
     private static final double         MAX_VALUE        = 100.0;
+    private static final int            DIRTY_SIZE       = 1;
+    private static final int            DIRTY_COLOR      = 1 << 1;
+    private static final int            DIRTY_INDICATOR  = 1 << 2;
+    private static final int            DIRTY_TEXT       = 1 << 3;
+    private static final int            DIRTY_TARGET     = 1 << 4;
+    private static final int            DIRTY_ALL        = (1 << 5) - 1;
     private              double         BAR_START_ANGLE  = -130;
     private              double         ANGLE_RANGE      = 280;
     private final        RegulatorEvent TARGET_SET_EVENT = new RegulatorEvent(RegulatorEvent.TARGET_SET);
@@ -105,7 +120,12 @@ public class ColorRegulator extends Region implements RegulatorControl {
     private DoubleProperty              brightness;
     private double                      angleStep;
     private ConicalGradient             barGradient;
+    private List<Stop>                  barStops;
+    private long                        barPatternGeneration;
+    private PauseTransition             barPatternTimer;
+    private double                      renderScale;
     private GradientLookup              gradientLookup;
+    private int                         dirty;
 
 
     // ******************** Constructors **************************************
@@ -123,8 +143,7 @@ public class ColorRegulator extends Region implements RegulatorControl {
         targetColor    = new ObjectPropertyBase<Color>(baseColor) {
             @Override protected void invalidated() {
                 super.set(null == get() ? Color.BLACK : get());
-                currentColorCircle.setFill(get());
-                indicatorRotate.setAngle(((gradientLookup.getValueFrom(baseColor) * 100.0) - MIN_VALUE) * angleStep - ANGLE_RANGE * 0.5);
+                markDirty(DIRTY_TARGET);
             }
             @Override public Object getBean() { return ColorRegulator.this; }
             @Override public String getName() { return "targetColor"; }
@@ -132,7 +151,7 @@ public class ColorRegulator extends Region implements RegulatorControl {
         textColor      = new ObjectPropertyBase<Color>(Color.WHITE) {
             @Override protected void invalidated() {
                 super.set(null == get() ? Color.WHITE:  get());
-                redraw();
+                markDirty(DIRTY_TEXT);
             }
             @Override public Object getBean() { return ColorRegulator.this; }
             @Override public String getName() { return "textColor"; }
@@ -140,33 +159,23 @@ public class ColorRegulator extends Region implements RegulatorControl {
         color          = new ObjectPropertyBase<Color>(DEFAULT_COLOR) {
             @Override protected void invalidated() {
                 super.set(null == get() ? DEFAULT_COLOR : get());
-                redraw();
+                markDirty(DIRTY_COLOR | DIRTY_INDICATOR);
             }
             @Override public Object getBean() { return ColorRegulator.this; }
             @Override public String getName() { return "color"; }
         };
         indicatorColor = new ObjectPropertyBase<Color>(Color.WHITE) {
-            @Override protected void invalidated() { indicatorGlow.setColor(get()); }
+            @Override protected void invalidated() { markDirty(DIRTY_INDICATOR); }
             @Override public Object getBean() { return ColorRegulator.this; }
             @Override public String getName() { return "indicatorColor"; }
         };
         selected       = new BooleanPropertyBase(false) {
-            @Override protected void invalidated() {
-                if (get()) {
-                    indicator.setFill(getIndicatorColor());
-                    indicator.setStroke(getIndicatorColor().darker().darker());
-                    indicator.setEffect(indicatorGlow);
-                } else {
-                    indicator.setFill(getColor().darker());
-                    indicator.setStroke(getColor().darker().darker());
-                    indicator.setEffect(null);
-                }
-            }
+            @Override protected void invalidated() { markDirty(DIRTY_INDICATOR); }
             @Override public Object getBean() { return ColorRegulator.this; }
             @Override public String getName() { return "selected"; }
         };
         on             = new BooleanPropertyBase(false) {
-            @Override protected void invalidated() { currentColorCircle.setVisible(get()); }
+            @Override protected void invalidated() { markDirty(DIRTY_TARGET); }
             @Override public Object getBean() { return ColorRegulator.this; }
             @Override public String getName() { return "on"; }
         };
@@ -179,6 +188,7 @@ public class ColorRegulator extends Region implements RegulatorControl {
             @Override public String getName() { return "brightness"; }
         };
         angleStep      = ANGLE_RANGE / (MAX_VALUE - MIN_VALUE);
+        dirty          = DIRTY_ALL;
 
         init();
         initGraphics();
@@ -223,12 +233,17 @@ public class ColorRegulator extends Region implements RegulatorControl {
 
         gradientLookup = new GradientLookup(stops);
 
-        barGradient = new ConicalGradient(reorderedStops);
+        barStops    = reorderedStops;
+        barGradient = new ConicalGradient(barStops);
         barArc = new Arc(PREFERRED_WIDTH * 0.5, PREFERRED_HEIGHT * 0.5, PREFERRED_WIDTH * 0.46, PREFERRED_HEIGHT * 0.46, BAR_START_ANGLE, 0);
         barArc.setType(ArcType.OPEN);
         barArc.setStrokeLineCap(StrokeLineCap.ROUND);
         barArc.setFill(null);
-        barArc.setStroke(barGradient.getImagePattern(new Rectangle(0, 0, PREFERRED_WIDTH, PREFERRED_HEIGHT)));
+        renderScale     = 1.0;
+        updateBarPattern(PREFERRED_WIDTH, PREFERRED_WIDTH);
+
+        barPatternTimer = new PauseTransition(Duration.millis(150));
+        barPatternTimer.setOnFinished(e -> updateBarPattern(size, size));
 
         buttonOn = new Arc(PREFERRED_WIDTH * 0.5, PREFERRED_HEIGHT * 0.5, PREFERRED_WIDTH * 0.46, PREFERRED_HEIGHT * 0.46, -125, 34.75);
         buttonOn.setFill(null);
@@ -298,10 +313,16 @@ public class ColorRegulator extends Region implements RegulatorControl {
     }
 
     private void registerListeners() {
-        widthProperty().addListener(o -> resize());
-        heightProperty().addListener(o -> resize());
+        widthProperty().addListener(o -> markDirty(DIRTY_SIZE));
+        heightProperty().addListener(o -> markDirty(DIRTY_SIZE));
+        RenderScale.addListener(this, () -> {
+            double scale = RenderScale.get(this);
+            if (Double.compare(scale, renderScale) == 0) return;
+            renderScale = scale;
+            if (size > 0) { updateBarPattern(size, size); }
+        });
         disabledProperty().addListener(o -> setOpacity(isDisabled() ? 0.4 : 1.0));
-        targetValueProperty().addListener(o -> rotate(targetValue.get()));
+        targetValueProperty().addListener(o -> updateTargetColor(targetValue.get()));
         ring.addEventHandler(MouseEvent.MOUSE_PRESSED, e -> { if (isDisabled()) return; touchRotate(e.getSceneX(), e.getSceneY()); });
         ring.addEventHandler(MouseEvent.MOUSE_DRAGGED, e -> { if (isDisabled()) return; touchRotate(e.getSceneX(), e.getSceneY()); });
         ring.addEventHandler(MouseEvent.MOUSE_RELEASED, e -> { if (isDisabled()) return; fireEvent(TARGET_SET_EVENT); });
@@ -341,8 +362,9 @@ public class ColorRegulator extends Region implements RegulatorControl {
     public void setGradientStops(final Stop... STOPS) { setGradientStops(Arrays.asList(STOPS)); }
     public void setGradientStops(final List<Stop> STOPS) {
         gradientLookup.setStops(STOPS);
-        barGradient = new ConicalGradient(reorderStops(STOPS));
-        barArc.setStroke(barGradient.getImagePattern(new Rectangle(0, 0, PREFERRED_WIDTH, PREFERRED_HEIGHT)));
+        barStops = reorderStops(STOPS);
+        recolorBarPattern(size > 0 ? size : PREFERRED_WIDTH);
+        updateTargetColor(targetValue.get());
     }
 
     public boolean isOn() { return on.get(); }
@@ -410,12 +432,73 @@ public class ColorRegulator extends Region implements RegulatorControl {
 
 
     // ******************** Resizing ******************************************
-    private void rotate(final double VALUE) {
-        indicatorRotate.setAngle((VALUE - MIN_VALUE) * angleStep - ANGLE_RANGE * 0.5);
+    // The target color is part of the state of the control and will be updated immediately, the indicator with the next layout pass
+    private void updateTargetColor(final double VALUE) {
         baseColor = gradientLookup.getColorAt(VALUE / 100.0);
-        baseColor.deriveColor(0, 1, getBrightness(), 1);
         targetColor.set(baseColor.deriveColor(0, 1, getBrightness(), 1));
+        markDirty(DIRTY_TARGET);
+    }
+
+    private void rotate(final double VALUE) {
+        indicatorRotate.setAngle((VALUE - MIN_VALUE) * angleStep - ANGLE_RANGE * 0.5);
         currentColorCircle.setFill(targetColor.get());
+        currentColorCircle.setVisible(isOn());
+    }
+
+    private void resizeBarPattern(final double SIZE) {
+        if (Status.RUNNING == barPatternTimer.getStatus()) {
+            // Live resize, use the raster of the size bucket until the size settles
+            updateBarPattern(GradientCache.getBucketSize(SIZE), SIZE);
+        } else {
+            updateBarPattern(SIZE, SIZE);
+        }
+        barPatternTimer.playFromStart();
+    }
+
+    // The bar arc only samples the ring around 0.46 * size with a stroke width of 0.04 * size
+    private void updateBarPattern(final double RASTER_SIZE, final double SIZE) {
+        final long GENERATION = ++barPatternGeneration;
+        CompletableFuture<ImagePattern> future = GradientCache.getRingImagePatternAsync(barStops, ScaleDirection.CLOCKWISE, 0, RASTER_SIZE, RASTER_SIZE * 0.44 - 1, RASTER_SIZE * 0.48 + 1, renderScale);
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            barArc.setStroke(scalePattern(future.join(), SIZE));
+            return;
+        }
+        // Show a low resolution version until the full resolution pattern is ready
+        barArc.setStroke(GradientCache.getPlaceholderPattern(barStops, ScaleDirection.CLOCKWISE, 0, SIZE, SIZE));
+        future.whenComplete((pattern, error) -> Platform.runLater(() -> {
+            if (GENERATION != barPatternGeneration) return;
+            if (null == error) {
+                barArc.setStroke(scalePattern(pattern, SIZE));
+            } else {
+                // Don't keep the placeholder, render the pattern on the FX thread instead
+                LOGGER.log(Level.WARNING, "Rendering the bar pattern in the background failed", error);
+                barArc.setStroke(scalePattern(GradientCache.getRingImagePattern(barStops, ScaleDirection.CLOCKWISE, 0, RASTER_SIZE, RASTER_SIZE * 0.44 - 1, RASTER_SIZE * 0.48 + 1, renderScale), SIZE));
+            }
+        }));
+    }
+
+    /**
+     * Only the colors of the bar change, so the ring of the bar gradient will
+     * be recolored in place instead of rendering a new ring for the cache.
+     * The gradient will only be created again if the size has changed.
+     */
+    private void recolorBarPattern(final double SIZE) {
+        final int    RASTER_SIZE = (int) Math.ceil(SIZE * renderScale);
+        final double CENTER      = RASTER_SIZE * 0.5;
+        double[]     center      = barGradient.getCenter();
+        if (Double.compare(center[0], CENTER) != 0 || Double.compare(center[1], CENTER) != 0) {
+            barGradient = new ConicalGradient(CENTER, CENTER, ScaleDirection.CLOCKWISE, barStops);
+        } else {
+            barGradient.setStops(barStops);
+        }
+        // A pattern of the cache that is still being rendered for the old colors must not replace the recolored one
+        barPatternGeneration++;
+        barArc.setStroke(new ImagePattern(barGradient.getRingImage(RASTER_SIZE, (SIZE * 0.44 - 1) * renderScale, (SIZE * 0.48 + 1) * renderScale), 0, 0, SIZE, SIZE, false));
+    }
+
+    private ImagePattern scalePattern(final ImagePattern PATTERN, final double SIZE) {
+        if (Double.compare(PATTERN.getWidth(), SIZE) == 0 && Double.compare(PATTERN.getHeight(), SIZE) == 0) { return PATTERN; }
+        return new ImagePattern(PATTERN.getImage(), 0, 0, SIZE, SIZE, false);
     }
 
     private void drawBar(final double VALUE) {
@@ -451,7 +534,7 @@ public class ColorRegulator extends Region implements RegulatorControl {
             barArc.setRadiusX(size * 0.46);
             barArc.setRadiusY(size * 0.46);
             barArc.setStrokeWidth(size * 0.04);
-            barArc.setStroke(barGradient.getImagePattern(new Rectangle(0, 0, size, size)));
+            resizeBarPattern(size);
             drawBar(MAX_VALUE);
             barArc.setCache(true);
             barArc.setCacheHint(CacheHint.SPEED);
@@ -518,23 +601,48 @@ public class ColorRegulator extends Region implements RegulatorControl {
             innerRing.getTransforms().setAll(new Scale(scaleFactor, scaleFactor, 0, 0));
             innerRing.setCache(true);
             innerRing.setCacheHint(CacheHint.SPEED);
-
-            redraw();
         }
     }
 
+    /**
+     * Marks the given layers as dirty, they will be redrawn once in the next
+     * layout pass no matter how many properties changed in between.
+     */
+    private void markDirty(final int LAYERS) {
+        if (0 == dirty) { requestLayout(); }
+        dirty |= LAYERS;
+    }
+
+    @Override protected void layoutChildren() {
+        redraw();
+        super.layoutChildren();
+    }
+
     private void redraw() {
-        pane.setBackground(new Background(new BackgroundFill(color.get().darker(), new CornerRadii(1024), Insets.EMPTY)));
-        mainCircle.setFill(color.get().darker().darker());
-        ring.setFill(color.get());
-        innerRing.setFill(color.get());
-        buttonOn.setStroke(color.get());
-        buttonOff.setStroke(color.get());
-        textOn.setFill(textColor.get());
-        textOff.setFill(textColor.get());
-        indicator.setFill(isSelected() ? indicatorColor.get() : color.get().darker());
-        indicator.setStroke(isSelected() ? indicatorColor.get().darker().darker() : color.get().darker().darker());
-        rotate(targetValue.get());
+        int layers = dirty;
+        dirty = 0;
+        if (0 == layers) return;
+
+        if ((layers & DIRTY_SIZE) != 0) { resize(); }
+        if ((layers & DIRTY_COLOR) != 0) {
+            pane.setBackground(new Background(new BackgroundFill(color.get().darker(), new CornerRadii(1024), Insets.EMPTY)));
+            mainCircle.setFill(color.get().darker().darker());
+            ring.setFill(color.get());
+            innerRing.setFill(color.get());
+            buttonOn.setStroke(color.get());
+            buttonOff.setStroke(color.get());
+        }
+        if ((layers & DIRTY_INDICATOR) != 0) {
+            indicatorGlow.setColor(indicatorColor.get());
+            indicator.setFill(isSelected() ? indicatorColor.get() : color.get().darker());
+            indicator.setStroke(isSelected() ? indicatorColor.get().darker().darker() : color.get().darker().darker());
+            indicator.setEffect(isSelected() ? indicatorGlow : null);
+        }
+        if ((layers & DIRTY_TEXT) != 0) {
+            textOn.setFill(textColor.get());
+            textOff.setFill(textColor.get());
+        }
+        if ((layers & DIRTY_TARGET) != 0) { rotate(targetValue.get()); }
     }
 
 
@@ -16,11 +16,13 @@
 
 package eu.hansolo.regulators;
 
-import javafx.animation.Interpolator;
+import javafx.application.Platform;
 import javafx.geometry.Bounds;
 import javafx.geometry.Point2D;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelWriter;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.ImagePattern;
@@ -28,15 +30,16 @@ import javafx.scene.paint.Stop;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.shape.Shape;
 
-import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -44,13 +47,40 @@ import java.util.TreeSet;
  */
 public class ConicalGradient {
     public enum ScaleDirection { CLOCKWISE, COUNTER_CLOCKWISE }
-    private static final double ANGLE_FACTOR = 1.0 / 360.0;
-    private double              centerX;
-    private double              centerY;
-    private List<Stop>          sortedStops;
-    private ScaleDirection      scaleDirection;
-    private WritableImage       rectRaster;
-    private WritableImage       roundRaster;
+    private interface RowRasterizer { void rasterize(int FROM_Y, int TO_Y); }
+    private static final double  ANGLE_FACTOR        = 1.0 / 360.0;
+    static final         int     LUT_SIZE            = 16384;
+    private static final double  LUT_FACTOR          = LUT_SIZE / 360.0;
+    private static final int     MIN_PARALLEL_PIXELS = 256 * 256;
+    private static final int     MIN_BAND_HEIGHT     = 16;
+    private static final boolean VECTORIZED          = isVectorizationEnabled();
+    private double                  centerX;
+    private double                  centerY;
+    private List<Stop>              sortedStops;
+    private ColorInterpolation      interpolation;
+    private ScaleDirection          scaleDirection;
+    private WritableImage           rectRaster;
+    private WritableImage           roundRaster;
+    private WritableImage           ringRaster;
+    private boolean                 rectRasterValid;
+    private boolean                 roundRasterValid;
+    private boolean                 ringRasterValid;
+    private PixelBuffer<IntBuffer>  rectPixels;
+    private PixelBuffer<IntBuffer>  roundPixels;
+    private PixelBuffer<IntBuffer>  ringPixels;
+    private boolean                 pixelBuffered;
+    private MipMapChain             mipMap;
+    private boolean                 mipMapped;
+    private double                  ringInnerRadius;
+    private double                  ringOuterRadius;
+    private int[]                   lut;
+    private boolean[]               lutSplit;
+    private int[]                   lutSegments;
+    private int[]                   premultipliedLut;
+    private int[]                   splitFlags;
+    private int[]                   scratchBuffer;
+    private boolean                 parallel;
+    private Executor                executor;
 
 
     // ******************** Constructors **************************************
@@ -78,15 +108,26 @@ public class ConicalGradient {
         centerY        = CENTER_Y;
         scaleDirection = DIRECTION;
         sortedStops    = normalizeStops(OFFSET, STOPS);
+        interpolation  = ColorInterpolation.SRGB;
+        parallel       = true;
+        executor       = ForkJoinPool.commonPool();
     }
 
 
     // ******************** Methods *******************************************
+    /**
+     * Shifts the current stops by the given angle in degrees and closes them
+     * at 0 and 1 again, the same way the OFFSET of the constructor does.
+     * Stops between two stops of the same color will be removed, they don't
+     * change the gradient but every call would add one more.
+     * The existing rasters will be updated in place the next time they are
+     * requested.
+     */
     public void recalculateWithAngle(final double ANGLE) {
         double angle = ANGLE % 360.0;
-        sortedStops  = calculate(sortedStops, ANGLE_FACTOR * angle);
-        rectRaster   = null;
-        roundRaster  = null;
+        sortedStops  = removeRedundantStops(calculate(sortedStops, ANGLE_FACTOR * angle));
+        resetLut();
+        invalidateRasters();
     }
 
     public List<Stop> getStops() { return sortedStops; }
@@ -99,12 +140,74 @@ public class ConicalGradient {
     public void setStops(final List<Stop> STOPS) {
         setStops(0 ,STOPS);
     }
+    /**
+     * Sets the stops of the gradient. If only the colors of some stops have
+     * changed (the offsets stay the same), the existing images will be updated in place and only the pixels
+     * between the neighbouring stops of the changed stops will be recalculated.
+     */
     public void setStops(final double OFFSET, final List<Stop> STOPS) {
-        sortedStops = normalizeStops(OFFSET, STOPS);
-        rectRaster  = null;
-        roundRaster = null;
+        List<Stop> stops = normalizeStops(OFFSET, STOPS);
+        if (updateStopColors(stops)) return;
+        sortedStops = stops;
+        resetLut();
+        invalidateRasters();
     }
 
+    public ColorInterpolation getInterpolation() { return interpolation; }
+    /**
+     * Defines the color space in which the colors between the stops will be
+     * interpolated (default: ColorInterpolation.SRGB). The interpolated colors
+     * will be baked into the lookup table, so rasterizing costs the same in
+     * all color spaces.
+     */
+    public void setInterpolation(final ColorInterpolation INTERPOLATION) {
+        ColorInterpolation interpolation = null == INTERPOLATION ? ColorInterpolation.SRGB : INTERPOLATION;
+        if (interpolation == this.interpolation) return;
+        this.interpolation = interpolation;
+        resetLut();
+        invalidateRasters();
+    }
+
+    public boolean isParallel() { return parallel; }
+    /**
+     * Defines if rasters with at least MIN_PARALLEL_PIXELS pixels will be
+     * calculated in bands of rows on the executor (default: common ForkJoinPool).
+     */
+    public void setParallel(final boolean PARALLEL) { parallel = PARALLEL; }
+
+    public boolean isPixelBuffered() { return pixelBuffered; }
+    /**
+     * Defines if the images will be backed by a PixelBuffer over a direct
+     * IntBuffer. Re-rendering such an image (e.g. after changing the stops or
+     * rotating the gradient) copies the changed region into the buffer inside
+     * of updateBuffer() on the FX thread, which only uploads the dirty region
+     * instead of the whole image. Re-rendering on another thread makes the
+     * update visible with the next pulse.
+     */
+    public void setPixelBuffered(final boolean PIXEL_BUFFERED) {
+        if (PIXEL_BUFFERED == pixelBuffered) return;
+        pixelBuffered = PIXEL_BUFFERED;
+        rectRaster    = null;
+        roundRaster   = null;
+        ringRaster    = null;
+        rectPixels    = null;
+        roundPixels   = null;
+        ringPixels    = null;
+    }
+
+    public boolean isMipMapped() { return mipMapped; }
+    /**
+     * Defines if getImagePattern() will use the images of a mip-map chain
+     * instead of rasterizing the gradient for every new size.
+     */
+    public void setMipMapped(final boolean MIP_MAPPED) {
+        mipMapped = MIP_MAPPED;
+        mipMap    = null;
+    }
+
+    public Executor getExecutor() { return executor; }
+    public void setExecutor(final Executor EXECUTOR) { executor = null == EXECUTOR ? ForkJoinPool.commonPool() : EXECUTOR; }
+
     public double[] getCenter() { return new double[]{ centerX, centerY }; }
     public Point2D getCenterPoint() { return new Point2D(centerX, centerY); }
 
@@ -112,87 +215,139 @@ public class ConicalGradient {
         int width  = (int) WIDTH  <= 0 ? 100 : (int) WIDTH;
         int height = (int) HEIGHT <= 0 ? 100 : (int) HEIGHT;
 
-        if (rectRaster != null && width == rectRaster.getWidth() && height == rectRaster.getHeight()) return rectRaster;
-
-        Color color = Color.TRANSPARENT;
-        rectRaster  = new WritableImage(width, height);
-        final PixelWriter PIXEL_WRITER = rectRaster.getPixelWriter();
+        boolean update = rectRaster != null && width == rectRaster.getWidth() && height == rectRaster.getHeight();
+        if (update) {
+            if (rectRasterValid) return rectRaster;
+        } else {
+            rectPixels = pixelBuffered ? createPixelBuffer(width, height) : null;
+            rectRaster = null == rectPixels ? new WritableImage(width, height) : new WritableImage(rectPixels);
+        }
         if (Double.compare(0.0, centerX) == 0) centerX = width * 0.5;
         if (Double.compare(0.0, centerY) == 0) centerY = height * 0.5;
 
-        int calculatedStopsLength = sortedStops.size() - 1;
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                double dx       = x - centerX;
-                double dy       = y - centerY;
-                double distance = Math.sqrt((dx * dx) + (dy * dy));
-                distance = Double.compare(distance, 0) == 0 ? 1 : distance;
-
-                double angle = adjustAngle(dx, dy, Math.abs(Math.toDegrees(Math.acos(dx / distance))));
-
-                for (int i = 0; i < calculatedStopsLength; i++) {
-                    double offsetI      = (sortedStops.get(i).getOffset() * 360.0);
-                    double offsetIPlus1 = (sortedStops.get(i + 1).getOffset() * 360.0);
-                    if (Double.compare(angle, offsetI) >= 0 &&
-                        Double.compare(angle, offsetIPlus1) < 0) {
-                        double fraction = (angle - offsetI) / (offsetIPlus1 - offsetI);
-                        color = (Color) Interpolator.LINEAR.interpolate(sortedStops.get(i).getColor(), sortedStops.get(i + 1).getColor(), fraction);
-                    }
-                }
-                PIXEL_WRITER.setColor(x, y, color);
-            }
-        }
+        final int[]      BUFFER = getScratchBuffer(width * height);
+        final PolarField FIELD  = PolarField.get(width, height, centerX, centerY);
+        rasterize(width, height, (fromY, toY) -> rasterizeRect(BUFFER, FIELD, fromY, toY));
+        writePixels(rectRaster, rectPixels, update, width, BUFFER, new int[] { 0, 0, width, height });
+        rectRasterValid = true;
         return rectRaster;
     }
     public Image getRoundImage(final double SIZE) {
         int size  = (int) SIZE  <= 0 ? 100 : (int) SIZE;
 
-        if (roundRaster != null && size == roundRaster.getWidth()) return roundRaster;
+        boolean update = roundRaster != null && size == roundRaster.getWidth();
+        if (update) {
+            if (roundRasterValid) return roundRaster;
+        } else {
+            roundPixels = pixelBuffered ? createPixelBuffer(size, size) : null;
+            roundRaster = null == roundPixels ? new WritableImage(size, size) : new WritableImage(roundPixels);
+        }
+        if (Double.compare(0.0, centerX) == 0) centerX = size * 0.5;
+        if (Double.compare(0.0, centerY) == 0) centerY = size * 0.5;
 
-        Color color = Color.TRANSPARENT;
-        roundRaster = new WritableImage(size, size);
-        final PixelWriter   PIXEL_WRITER = roundRaster.getPixelWriter();
+        final int[]      BUFFER = getScratchBuffer(size * size);
+        final PolarField FIELD  = PolarField.get(size, size, centerX, centerY);
+        rasterize(size, size, (fromY, toY) -> rasterizeRound(BUFFER, FIELD, fromY, toY));
+        writePixels(roundRaster, roundPixels, update, size, BUFFER, new int[] { 0, 0, size, size });
+        roundRasterValid = true;
+        return roundRaster;
+    }
+    /**
+     * Returns a square image of the given size where only the pixels in the
+     * ring between the inner and the outer radius contain the gradient, all
+     * other pixels stay transparent and will not be calculated at all.
+     * Useful for shapes like arcs that only sample a thin band of the gradient.
+     */
+    public Image getRingImage(final double SIZE, final double INNER_RADIUS, final double OUTER_RADIUS) {
+        int    size        = (int) SIZE  <= 0 ? 100 : (int) SIZE;
+        double innerRadius = clamp(0, size, Math.min(INNER_RADIUS, OUTER_RADIUS));
+        double outerRadius = clamp(0, size, Math.max(INNER_RADIUS, OUTER_RADIUS));
+
+        boolean update     = ringRaster != null && size == ringRaster.getWidth();
+        boolean sameRadius = Double.compare(innerRadius, ringInnerRadius) == 0 && Double.compare(outerRadius, ringOuterRadius) == 0;
+        if (update) {
+            if (ringRasterValid && sameRadius) { return ringRaster; }
+        } else {
+            ringPixels = pixelBuffered ? createPixelBuffer(size, size) : null;
+            ringRaster = null == ringPixels ? new WritableImage(size, size) : new WritableImage(ringPixels);
+        }
+        ringInnerRadius = innerRadius;
+        ringOuterRadius = outerRadius;
         if (Double.compare(0.0, centerX) == 0) centerX = size * 0.5;
         if (Double.compare(0.0, centerY) == 0) centerY = size * 0.5;
-        double radius                = size * 0.5;
-        int    calculatedStopsLength = sortedStops.size() - 1;
-        for (int y = 0; y < size; y++) {
-            for (int x = 0; x < size; x++) {
-                double dx       = x - centerX;
-                double dy       = y - centerY;
-                double distance = Math.sqrt((dx * dx) + (dy * dy));
-                distance = Double.compare(distance, 0) == 0 ? 1 : distance;
-
-                double angle         = adjustAngle(dx, dy, Math.abs(Math.toDegrees(Math.acos(dx / distance))));
-                double radiusMinus05 = radius - 0.25;
-                double radiusMinus10 = radius - 0.5;
-                double radiusMinus15 = radius - 1.0;
-                double radiusMinus20 = radius - 1.5;
-
-                if (distance > radius) {
-                    color = Color.TRANSPARENT;
-                } else {
-                    for (int i = 0; i < calculatedStopsLength; i++) {
-                        if (angle >= (sortedStops.get(i).getOffset() * 360) && angle < (sortedStops.get(i + 1).getOffset() * 360)) {
-                            double fraction = (angle - sortedStops.get(i).getOffset() * 360) / ((sortedStops.get(i + 1).getOffset() - sortedStops.get(i).getOffset()) * 360);
-                            color = (Color) Interpolator.LINEAR.interpolate(sortedStops.get(i).getColor(), sortedStops.get(i + 1).getColor(), fraction);
-
-                            if (distance > radiusMinus05) {
-                                color = color.deriveColor(0.0, 1.0, 1.0, 0.25);
-                            } else if (distance > radiusMinus10) {
-                                color = color.deriveColor(0.0, 1.0, 1.0, 0.45);
-                            } else if (distance > radiusMinus15) {
-                                color = color.deriveColor(0.0, 1.0, 1.0, 0.65);
-                            } else if (distance > radiusMinus20) {
-                                color = color.deriveColor(0.0, 1.0, 1.0, 0.85);
-                            }
-                        }
-                    }
-                }
-                PIXEL_WRITER.setColor(x, y, color);
-            }
+
+        // Only use the angle field if it is already there, calculating it would cost more than the ring itself
+        final int[]      BUFFER = getScratchBuffer(size * size);
+        final PolarField FIELD  = PolarField.getIfPresent(size, size, centerX, centerY);
+        rasterize(size, size, (fromY, toY) -> rasterizeRing(BUFFER, size, FIELD, innerRadius, outerRadius, fromY, toY));
+        // If only the colors changed, the pixels outside of the bounds of the ring stay transparent
+        int[] bounds = { 0, 0, size, size };
+        if (update && sameRadius) {
+            bounds[0] = (int) clamp(0, size, Math.floor(centerX - outerRadius) - 1);
+            bounds[1] = (int) clamp(0, size, Math.floor(centerY - outerRadius) - 1);
+            bounds[2] = (int) clamp(0, size, Math.ceil(centerX + outerRadius) + 2);
+            bounds[3] = (int) clamp(0, size, Math.ceil(centerY + outerRadius) + 2);
         }
-        return roundRaster;
+        writePixels(ringRaster, ringPixels, update, size, BUFFER, bounds);
+        ringRasterValid = true;
+        return ringRaster;
+    }
+
+    /**
+     * Returns the rectangular raster as palette indexed pixels without
+     * creating an image or null if it contains too many colors.
+     */
+    IndexedRaster getIndexedImage(final double WIDTH, final double HEIGHT) {
+        int width  = (int) WIDTH  <= 0 ? 100 : (int) WIDTH;
+        int height = (int) HEIGHT <= 0 ? 100 : (int) HEIGHT;
+        if (Double.compare(0.0, centerX) == 0) centerX = width * 0.5;
+        if (Double.compare(0.0, centerY) == 0) centerY = height * 0.5;
+
+        final int[]      BUFFER = getScratchBuffer(width * height);
+        final PolarField FIELD  = PolarField.get(width, height, centerX, centerY);
+        rasterize(width, height, (fromY, toY) -> rasterizeRect(BUFFER, FIELD, fromY, toY));
+        return IndexedRaster.of(width, height, BUFFER);
+    }
+    /**
+     * Returns the ring raster as palette indexed pixels without creating an
+     * image or null if it contains too many colors.
+     */
+    IndexedRaster getIndexedRingImage(final double SIZE, final double INNER_RADIUS, final double OUTER_RADIUS) {
+        int    size        = (int) SIZE  <= 0 ? 100 : (int) SIZE;
+        double innerRadius = clamp(0, size, Math.min(INNER_RADIUS, OUTER_RADIUS));
+        double outerRadius = clamp(0, size, Math.max(INNER_RADIUS, OUTER_RADIUS));
+        if (Double.compare(0.0, centerX) == 0) centerX = size * 0.5;
+        if (Double.compare(0.0, centerY) == 0) centerY = size * 0.5;
+
+        final int[]      BUFFER = getScratchBuffer(size * size);
+        final PolarField FIELD  = PolarField.getIfPresent(size, size, centerX, centerY);
+        rasterize(size, size, (fromY, toY) -> rasterizeRing(BUFFER, size, FIELD, innerRadius, outerRadius, fromY, toY));
+        return IndexedRaster.of(size, size, BUFFER);
+    }
+
+    /**
+     * Returns the image of the mip-map chain level that is closest to the
+     * given size, with the center of the gradient in the center of the image.
+     * The chain will only be rasterized again if the gradient changes or if
+     * a larger size or another aspect ratio is requested, smaller sizes will
+     * be downsampled from the largest one.
+     */
+    public Image getMipMapImage(final double WIDTH, final double HEIGHT) {
+        int width  = (int) WIDTH  <= 0 ? 100 : (int) WIDTH;
+        int height = (int) HEIGHT <= 0 ? 100 : (int) HEIGHT;
+
+        // Keep the largest size as long as the aspect ratio is the same (within one pixel)
+        if (null != mipMap && Math.abs(width * mipMap.height - height * mipMap.width) > Math.max(mipMap.width, mipMap.height)) { mipMap = null; }
+        if (null == mipMap || width > mipMap.width || height > mipMap.height) {
+            int baseWidth  = null == mipMap ? width  : Math.max(width, mipMap.width);
+            int baseHeight = null == mipMap ? height : Math.max(height, mipMap.height);
+            // The mip-map always uses the center of the image, the center of the gradient stays as it is
+            final int[]      BUFFER = new int[baseWidth * baseHeight];
+            final PolarField FIELD  = PolarField.get(baseWidth, baseHeight, baseWidth * 0.5, baseHeight * 0.5);
+            rasterize(baseWidth, baseHeight, (fromY, toY) -> rasterizeRect(BUFFER, FIELD, fromY, toY));
+            mipMap = new MipMapChain(baseWidth, baseHeight, BUFFER);
+        }
+        return mipMap.getImage(width, height);
     }
 
     public ImagePattern apply(final Shape SHAPE) {
@@ -213,68 +368,579 @@ public class ConicalGradient {
         double y      = BOUNDS.getY();
         double width  = BOUNDS.getWidth();
         double height = BOUNDS.getHeight();
+        if (mipMapped) { return new ImagePattern(getMipMapImage(width, height), x, y, width, height, false); }
         centerX       = width * 0.5;
         centerY       = height * 0.5;
         return new ImagePattern(getImage(width, height), x, y, width, height, false);
     }
 
-    private double adjustAngle(final double DX, final double DY, double angle) {
-        if (Double.compare(DX, 0) >= 0 && Double.compare(DY, 0) <= 0) {
-            angle = 90.0 - angle;   // Upper Right Quadrant
-        } else if (Double.compare(DX, 0) >= 0 && Double.compare(DY, 0) >= 0) {
-            angle += 90.0;          // Lower Right Quadrant
-        } else if (Double.compare(DX, 0) <= 0 && Double.compare(DY, 0) >= 0) {
-            angle += 90.0;          // Lower Left Quadrant
-        } else if (Double.compare(DX, 0) <= 0 && Double.compare(DY, 0) <= 0) {
-            angle = 450.0 - angle;  // Upper Left Qudrant
+    private boolean updateStopColors(final List<Stop> STOPS) {
+        if (null == lut || STOPS.size() != sortedStops.size()) return false;
+        int size      = STOPS.size();
+        int fromStop  = size;
+        int toStop    = -1;
+        for (int i = 0 ; i < size ; i++) {
+            Stop oldStop = sortedStops.get(i);
+            Stop newStop = STOPS.get(i);
+            if (Double.compare(oldStop.getOffset(), newStop.getOffset()) != 0) return false;
+            if (oldStop.getColor().equals(newStop.getColor())) continue;
+            fromStop = Math.min(fromStop, Math.max(0, i - 1));
+            toStop   = Math.max(toStop, Math.min(size - 1, i + 1));
         }
+        sortedStops = STOPS;
+        if (toStop < 0) return true;
+
+        // Only the colors between the neighbouring stops of the changed stops are affected
+        mipMap = null;
+        final int    FROM_INDEX = Math.max(0, (int) Math.floor(STOPS.get(fromStop).getOffset() * LUT_SIZE) - 1);
+        final int    TO_INDEX   = Math.min(LUT_SIZE, (int) Math.ceil(STOPS.get(toStop).getOffset() * LUT_SIZE) + 2);
+        updateLut(lut, premultipliedLut, lutSplit, lutSegments, FROM_INDEX, TO_INDEX);
+        splitFlags = null;
+        final double FROM_ANGLE = FROM_INDEX / LUT_FACTOR;
+        final double TO_ANGLE   = TO_INDEX / LUT_FACTOR;
+
+        if (rectRasterValid) {
+            final int        WIDTH  = (int) rectRaster.getWidth();
+            final int        HEIGHT = (int) rectRaster.getHeight();
+            final int[]      BOUNDS = getSectorBounds(WIDTH, HEIGHT, FROM_ANGLE, TO_ANGLE);
+            final int[]      BUFFER = getScratchBuffer(WIDTH * HEIGHT);
+            final PolarField FIELD  = PolarField.get(WIDTH, HEIGHT, centerX, centerY);
+            rasterize(BOUNDS[2] - BOUNDS[0], BOUNDS[3] - BOUNDS[1], (fromY, toY) -> rasterizeRect(BUFFER, FIELD, BOUNDS[0], BOUNDS[2], BOUNDS[1] + fromY, BOUNDS[1] + toY));
+            writePixels(rectRaster, rectPixels, true, WIDTH, BUFFER, BOUNDS);
+        }
+        if (roundRasterValid) {
+            final int        SIZE   = (int) roundRaster.getWidth();
+            final int[]      BOUNDS = getSectorBounds(SIZE, SIZE, FROM_ANGLE, TO_ANGLE);
+            final int[]      BUFFER = getScratchBuffer(SIZE * SIZE);
+            final PolarField FIELD  = PolarField.get(SIZE, SIZE, centerX, centerY);
+            rasterize(BOUNDS[2] - BOUNDS[0], BOUNDS[3] - BOUNDS[1], (fromY, toY) -> rasterizeRound(BUFFER, FIELD, BOUNDS[0], BOUNDS[2], BOUNDS[1] + fromY, BOUNDS[1] + toY));
+            writePixels(roundRaster, roundPixels, true, SIZE, BUFFER, BOUNDS);
+        }
+        if (ringRasterValid) {
+            final int        SIZE   = (int) ringRaster.getWidth();
+            final int[]      BOUNDS = getSectorBounds(SIZE, SIZE, FROM_ANGLE, TO_ANGLE);
+            final int[]      BUFFER = getScratchBuffer(SIZE * SIZE);
+            final PolarField FIELD  = PolarField.getIfPresent(SIZE, SIZE, centerX, centerY);
+            rasterize(SIZE, BOUNDS[3] - BOUNDS[1], (fromY, toY) -> rasterizeRing(BUFFER, SIZE, FIELD, ringInnerRadius, ringOuterRadius, BOUNDS[1] + fromY, BOUNDS[1] + toY));
+            writePixels(ringRaster, ringPixels, true, SIZE, BUFFER, BOUNDS);
+        }
+        return true;
+    }
 
-        /*
-        if (DX >= 0 && DY <= 0) {
-            angle = 90.0 - angle;   // Upper Right Quadrant
-        } else if (DX >= 0 && DY >= 0) {
-            angle += 90.0;          // Lower Right Quadrant
-        } else if (DX <= 0 && DY >= 0) {
-            angle += 90.0;          // Lower Left Quadrant
-        } else if (DX <= 0 && DY <= 0) {
-            angle = 450.0 - angle;  // Upper Left Qudrant
+    /**
+     * Returns the bounds { minX, minY, maxX (exclusive), maxY (exclusive) } of
+     * all pixels of a raster with the given size whose angle lies between the
+     * given angles in degrees.
+     */
+    private int[] getSectorBounds(final int WIDTH, final int HEIGHT, final double FROM_ANGLE, final double TO_ANGLE) {
+        boolean centerInside = centerX >= 0 && centerX <= WIDTH && centerY >= 0 && centerY <= HEIGHT;
+        if (TO_ANGLE - FROM_ANGLE >= 180 || !centerInside) { return new int[] { 0, 0, WIDTH, HEIGHT }; }
+
+        // The sector is convex, so it is bounded by the center, the ends of both rays and the corners within the sector
+        double minX = centerX;
+        double minY = centerY;
+        double maxX = centerX;
+        double maxY = centerY;
+        for (double angle : new double[] { FROM_ANGLE, TO_ANGLE }) {
+            double dx       = Math.sin(Math.toRadians(angle));
+            double dy       = -Math.cos(Math.toRadians(angle));
+            double distance = Double.MAX_VALUE;
+            if (dx > 0) { distance = Math.min(distance, (WIDTH - centerX) / dx); }
+            if (dx < 0) { distance = Math.min(distance, -centerX / dx); }
+            if (dy > 0) { distance = Math.min(distance, (HEIGHT - centerY) / dy); }
+            if (dy < 0) { distance = Math.min(distance, -centerY / dy); }
+            minX = Math.min(minX, centerX + distance * dx);
+            maxX = Math.max(maxX, centerX + distance * dx);
+            minY = Math.min(minY, centerY + distance * dy);
+            maxY = Math.max(maxY, centerY + distance * dy);
         }
-        */
-        return angle;
+        for (double[] corner : new double[][] { { 0, 0 }, { WIDTH, 0 }, { 0, HEIGHT }, { WIDTH, HEIGHT } }) {
+            double angle = PolarField.angle(corner[0] - centerX, corner[1] - centerY);
+            if (angle < FROM_ANGLE || angle > TO_ANGLE) continue;
+            minX = Math.min(minX, corner[0]);
+            maxX = Math.max(maxX, corner[0]);
+            minY = Math.min(minY, corner[1]);
+            maxY = Math.max(maxY, corner[1]);
+        }
+        return new int[] {
+            (int) clamp(0, WIDTH,  Math.floor(minX) - 1),
+            (int) clamp(0, HEIGHT, Math.floor(minY) - 1),
+            (int) clamp(0, WIDTH,  Math.ceil(maxX) + 2),
+            (int) clamp(0, HEIGHT, Math.ceil(maxY) + 2)
+        };
+    }
+
+    // Keeps the images, they will be reused if the next request has the same size, the mip-map chain will be rebuilt
+    private void resetLut() {
+        lut              = null;
+        lutSplit         = null;
+        lutSegments      = null;
+        premultipliedLut = null;
+        splitFlags       = null;
+    }
+
+    private void invalidateRasters() {
+        mipMap           = null;
+        rectRasterValid  = false;
+        roundRasterValid = false;
+        ringRasterValid  = false;
+    }
+
+    /**
+     * Rasterizes the rows of a buffer in bands on the executor if the
+     * gradient is parallel. The bands only write to the heap buffer, the
+     * pixels of an image will be written afterwards by writePixels().
+     */
+    private void rasterize(final int WIDTH, final int HEIGHT, final RowRasterizer ROW_RASTERIZER) {
+        getLut(); // calculate the lookup table before the bands will be distributed
+
+        int bands = Math.min(HEIGHT / MIN_BAND_HEIGHT, Runtime.getRuntime().availableProcessors() * 4);
+        if (!parallel || bands < 2 || WIDTH * HEIGHT < MIN_PARALLEL_PIXELS) {
+            ROW_RASTERIZER.rasterize(0, HEIGHT);
+            return;
+        }
+
+        CompletableFuture<?>[] futures    = new CompletableFuture<?>[bands];
+        int                    bandHeight = (HEIGHT + bands - 1) / bands;
+        for (int band = 0 ; band < bands ; band++) {
+            final int FROM_Y = Math.min(HEIGHT, band * bandHeight);
+            final int TO_Y   = Math.min(HEIGHT, FROM_Y + bandHeight);
+            futures[band] = CompletableFuture.runAsync(() -> ROW_RASTERIZER.rasterize(FROM_Y, TO_Y), executor);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * Fills the rows FROM_Y (inclusive) to TO_Y (exclusive) of the given
+     * buffer with the premultiplied ARGB values of the rectangular raster,
+     * optionally limited to the columns FROM_X (inclusive) to TO_X (exclusive).
+     */
+    private void rasterizeRect(final int[] BUFFER, final PolarField FIELD, final int FROM_Y, final int TO_Y) {
+        rasterizeRect(BUFFER, FIELD, 0, FIELD.width, FROM_Y, TO_Y);
+    }
+    private void rasterizeRect(final int[] BUFFER, final PolarField FIELD, final int FROM_X, final int TO_X, final int FROM_Y, final int TO_Y) {
+        final int[] INDICES = VECTORIZED ? new int[VectorRasterizer.getLanes()] : null;
+        for (int y = FROM_Y; y < TO_Y; y++) {
+            rasterizeSpan(BUFFER, FIELD, INDICES, y * FIELD.width, y - FIELD.centerY, FROM_X, TO_X);
+        }
+    }
+
+    /**
+     * Fills the columns FROM_X (inclusive) to TO_X (exclusive) of the row that
+     * starts at ROW with the premultiplied ARGB values of the gradient without
+     * any edge alpha.
+     */
+    private void rasterizeSpan(final int[] BUFFER, final PolarField FIELD, final int[] INDICES, final int ROW, final double DY, final int FROM_X, final int TO_X) {
+        final int[]   LUT    = getLut();
+        final int[]   PLUT   = premultipliedLut;
+        final short[] ANGLES = FIELD.angleIndices;
+        if (VECTORIZED) {
+            VectorRasterizer.gather(BUFFER, ANGLES, ROW + FROM_X, ROW + TO_X, PLUT, getSplitFlags(), INDICES,
+                                    i -> premultiply(argbAt(LUT, ANGLES[i], i - ROW - FIELD.centerX, DY)));
+            return;
+        }
+        for (int x = FROM_X; x < TO_X; x++) {
+            int index = ANGLES[ROW + x];
+            BUFFER[ROW + x] = lutSplit[index] ? premultiply(argbAt(LUT, ANGLES[ROW + x], x - FIELD.centerX, DY)) : PLUT[index];
+        }
+    }
+
+    /**
+     * Fills the rows FROM_Y (inclusive) to TO_Y (exclusive) of the given
+     * buffer with the premultiplied ARGB values of the round raster,
+     * optionally limited to the columns FROM_X (inclusive) to TO_X (exclusive).
+     */
+    private void rasterizeRound(final int[] BUFFER, final PolarField FIELD, final int FROM_Y, final int TO_Y) {
+        rasterizeRound(BUFFER, FIELD, 0, FIELD.width, FROM_Y, TO_Y);
+    }
+    private void rasterizeRound(final int[] BUFFER, final PolarField FIELD, final int FROM_X, final int TO_X, final int FROM_Y, final int TO_Y) {
+        double radius        = FIELD.width * 0.5;
+        double radiusMinus20 = radius - 1.5;
+        final int[]   LUT     = getLut();
+        final short[] ANGLES  = FIELD.angleIndices;
+        final int[]   INDICES = VECTORIZED ? new int[VectorRasterizer.getLanes()] : null;
+        for (int y = FROM_Y; y < TO_Y; y++) {
+            int    row = y * FIELD.width;
+            double dy  = y - centerY;
+
+            // Pixels closer than radius - 1.5 (with one pixel of safety) need neither the distance nor edge alpha
+            int    innerFromX = TO_X;
+            int    innerToX   = TO_X;
+            double chord      = radiusMinus20 * radiusMinus20 - dy * dy;
+            if (chord > 0) {
+                double halfChord = Math.sqrt(chord) - 1;
+                innerFromX = (int) clamp(FROM_X, TO_X, Math.ceil(centerX - halfChord));
+                innerToX   = (int) clamp(innerFromX, TO_X, Math.floor(centerX + halfChord) + 1);
+                rasterizeSpan(BUFFER, FIELD, INDICES, row, dy, innerFromX, innerToX);
+            }
+
+            // The inner span may be empty if the chord is shorter than a pixel
+            rasterizeRoundEdge(BUFFER, LUT, ANGLES, row, dy, radius, FROM_X, innerFromX);
+            rasterizeRoundEdge(BUFFER, LUT, ANGLES, row, dy, radius, innerToX, TO_X);
+        }
+    }
+    // Fills the columns FROM_X (inclusive) to TO_X (exclusive) of the row with the distance check and the edge alpha
+    private void rasterizeRoundEdge(final int[] BUFFER, final int[] LUT, final short[] ANGLES, final int ROW, final double DY, final double RADIUS, final int FROM_X, final int TO_X) {
+        double radiusMinus05 = RADIUS - 0.25;
+        double radiusMinus10 = RADIUS - 0.5;
+        double radiusMinus15 = RADIUS - 1.0;
+        double radiusMinus20 = RADIUS - 1.5;
+        for (int x = FROM_X; x < TO_X; x++) {
+            double dx       = x - centerX;
+            double distance = Math.sqrt((dx * dx) + (DY * DY));
+            distance = Double.compare(distance, 0) == 0 ? 1 : distance;
+
+            int argb;
+            if (distance > RADIUS) {
+                argb = 0x00000000;
+            } else {
+                argb = argbAt(LUT, ANGLES[ROW + x], dx, DY);
+
+                if (distance > radiusMinus05) {
+                    argb = deriveAlpha(argb, 0.25);
+                } else if (distance > radiusMinus10) {
+                    argb = deriveAlpha(argb, 0.45);
+                } else if (distance > radiusMinus15) {
+                    argb = deriveAlpha(argb, 0.65);
+                } else if (distance > radiusMinus20) {
+                    argb = deriveAlpha(argb, 0.85);
+                }
+            }
+            BUFFER[ROW + x] = premultiply(argb);
+        }
+    }
+
+    /**
+     * Fills the rows FROM_Y (inclusive) to TO_Y (exclusive) of the given
+     * buffer with the premultiplied ARGB values of the ring between the
+     * inner and outer radius. Only the spans of each row that intersect
+     * the ring will be calculated.
+     */
+    private void rasterizeRing(final int[] BUFFER, final int SIZE, final PolarField FIELD, final double INNER_RADIUS, final double OUTER_RADIUS, final int FROM_Y, final int TO_Y) {
+        final int[] LUT    = getLut();
+        double      inner2 = INNER_RADIUS * INNER_RADIUS;
+        double      outer2 = OUTER_RADIUS * OUTER_RADIUS;
+        for (int y = FROM_Y; y < TO_Y; y++) {
+            int row = y * SIZE;
+            Arrays.fill(BUFFER, row, row + SIZE, 0x00000000);
+
+            double dy  = y - centerY;
+            double dy2 = dy * dy;
+            if (dy2 > outer2) continue;
+
+            double outerHalfWidth = Math.sqrt(outer2 - dy2);
+            int    minX           = Math.max(0, (int) Math.floor(centerX - outerHalfWidth) - 1);
+            int    maxX           = Math.min(SIZE - 1, (int) Math.ceil(centerX + outerHalfWidth) + 1);
+            if (dy2 < inner2) {
+                // Skip the pixels that are inside of the inner radius with a safety margin of one pixel
+                double innerHalfWidth = Math.sqrt(inner2 - dy2);
+                // The inner circle may also lie partly or completely outside of the image if the center is not in the image
+                int    innerMinX      = (int) Math.floor(centerX - innerHalfWidth) + 2;
+                int    innerMaxX      = (int) Math.ceil(centerX + innerHalfWidth) - 2;
+                rasterizeRingSpan(BUFFER, LUT, FIELD, row, dy, inner2, outer2, minX, Math.min(maxX, innerMinX - 1));
+                rasterizeRingSpan(BUFFER, LUT, FIELD, row, dy, inner2, outer2, Math.max(minX, innerMaxX + 1), maxX);
+            } else {
+                rasterizeRingSpan(BUFFER, LUT, FIELD, row, dy, inner2, outer2, minX, maxX);
+            }
+        }
+    }
+    private void rasterizeRingSpan(final int[] BUFFER, final int[] LUT, final PolarField FIELD, final int ROW, final double DY, final double INNER2, final double OUTER2, final int FROM_X, final int TO_X) {
+        double dy2 = DY * DY;
+        for (int x = FROM_X ; x <= TO_X ; x++) {
+            double dx        = x - centerX;
+            double distance2 = (dx * dx) + dy2;
+            if (distance2 < INNER2 || distance2 > OUTER2) continue;
+
+            int argb = null == FIELD ? argbAt(LUT, PolarField.angle(dx, DY)) : argbAt(LUT, FIELD.angleIndices[ROW + x], dx, DY);
+            BUFFER[ROW + x] = premultiply(argb);
+        }
+    }
+
+    /**
+     * Writes the region { minX, minY, maxX (exclusive), maxY (exclusive) } of
+     * the given buffer to the image. A PixelBuffer may only be changed inside
+     * of updateBuffer() on the FX thread while it is shown, so updates from
+     * other threads copy the region and write it on the FX thread later. A
+     * new image (or any image if the toolkit is not running) is not rendered
+     * yet and will be written directly.
+     */
+    private static void writePixels(final WritableImage IMAGE, final PixelBuffer<IntBuffer> PIXELS, final boolean UPDATE, final int WIDTH, final int[] BUFFER, final int[] BOUNDS) {
+        final int REGION_WIDTH  = BOUNDS[2] - BOUNDS[0];
+        final int REGION_HEIGHT = BOUNDS[3] - BOUNDS[1];
+        if (REGION_WIDTH <= 0 || REGION_HEIGHT <= 0) return;
+        if (null == PIXELS) {
+            IMAGE.getPixelWriter().setPixels(BOUNDS[0], BOUNDS[1], REGION_WIDTH, REGION_HEIGHT, PixelFormat.getIntArgbPreInstance(), BUFFER, BOUNDS[1] * WIDTH + BOUNDS[0], WIDTH);
+        } else if (!UPDATE) {
+            copyRegion(PIXELS.getBuffer(), WIDTH, BUFFER, BOUNDS[1] * WIDTH + BOUNDS[0], WIDTH, BOUNDS);
+        } else if (Platform.isFxApplicationThread()) {
+            PIXELS.updateBuffer(pixelBuffer -> {
+                copyRegion(pixelBuffer.getBuffer(), WIDTH, BUFFER, BOUNDS[1] * WIDTH + BOUNDS[0], WIDTH, BOUNDS);
+                return new Rectangle2D(BOUNDS[0], BOUNDS[1], REGION_WIDTH, REGION_HEIGHT);
+            });
+        } else {
+            // The scratch buffer will be reused by the next rasterization, so the region has to be copied
+            final int[] REGION = new int[REGION_WIDTH * REGION_HEIGHT];
+            for (int y = 0 ; y < REGION_HEIGHT ; y++) { System.arraycopy(BUFFER, (BOUNDS[1] + y) * WIDTH + BOUNDS[0], REGION, y * REGION_WIDTH, REGION_WIDTH); }
+            try {
+                Platform.runLater(() -> PIXELS.updateBuffer(pixelBuffer -> {
+                    copyRegion(pixelBuffer.getBuffer(), WIDTH, REGION, 0, REGION_WIDTH, BOUNDS);
+                    return new Rectangle2D(BOUNDS[0], BOUNDS[1], REGION_WIDTH, REGION_HEIGHT);
+                }));
+            } catch (IllegalStateException e) {
+                // The toolkit is not running, so nothing can render the image
+                copyRegion(PIXELS.getBuffer(), WIDTH, REGION, 0, REGION_WIDTH, BOUNDS);
+            }
+        }
+    }
+
+    // Copies the rows of the region BOUNDS from SOURCE (starting at OFFSET with the given stride) to the target with the given width
+    private static void copyRegion(final IntBuffer TARGET, final int WIDTH, final int[] SOURCE, final int OFFSET, final int STRIDE, final int[] BOUNDS) {
+        int regionWidth = BOUNDS[2] - BOUNDS[0];
+        for (int y = BOUNDS[1] ; y < BOUNDS[3] ; y++) {
+            TARGET.put(y * WIDTH + BOUNDS[0], SOURCE, OFFSET + (y - BOUNDS[1]) * STRIDE, regionWidth);
+        }
+    }
+
+    private static PixelBuffer<IntBuffer> createPixelBuffer(final int WIDTH, final int HEIGHT) {
+        IntBuffer buffer = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        return new PixelBuffer<>(WIDTH, HEIGHT, buffer, PixelFormat.getIntArgbPreInstance());
+    }
+
+    private int[] getScratchBuffer(final int LENGTH) {
+        if (null == scratchBuffer || scratchBuffer.length < LENGTH) { scratchBuffer = new int[LENGTH]; }
+        return scratchBuffer;
+    }
+
+    /**
+     * Returns the gradient colors as packed ARGB values indexed by angle.
+     * Each entry is sampled at the lower edge of its angle range. Entries
+     * that contain a stop or whose color at the upper edge is not the same
+     * are marked as split and calculated per pixel instead, all other
+     * entries are exact because the color of a segment between two stops
+     * changes monotonically with the angle.
+     * @return the gradient colors as packed ARGB values indexed by angle
+     */
+    private int[] getLut() {
+        if (null != lut) return lut;
+        int[]     table              = new int[LUT_SIZE];
+        int[]     premultipliedTable = new int[LUT_SIZE];
+        boolean[] split              = new boolean[LUT_SIZE];
+        int[]     segments           = new int[LUT_SIZE];
+        updateLut(table, premultipliedTable, split, segments, 0, LUT_SIZE);
+        premultipliedLut = premultipliedTable;
+        lutSplit         = split;
+        lutSegments      = segments;
+        lut              = table;
+        return lut;
+    }
+
+    // Calculates the entries FROM_INDEX (inclusive) to TO_INDEX (exclusive) of the given tables
+    private void updateLut(final int[] TABLE, final int[] PREMULTIPLIED_TABLE, final boolean[] SPLIT, final int[] SEGMENTS, final int FROM_INDEX, final int TO_INDEX) {
+        double lowerAngle   = FROM_INDEX / LUT_FACTOR;
+        int    lowerSegment = segmentAt(0, lowerAngle);
+        int    lowerEdge    = argbAt(lowerAngle, lowerSegment);
+        for (int index = FROM_INDEX ; index < TO_INDEX ; index++) {
+            // The upper edge of the last entry is 360 deg which belongs to no stop
+            double upperAngle   = index == LUT_SIZE - 1 ? Math.nextDown(360.0) : (index + 1) / LUT_FACTOR;
+            int    upperSegment = segmentAt(lowerSegment, upperAngle);
+            int    upperEdge    = argbAt(upperAngle, upperSegment);
+            TABLE[index]               = lowerEdge;
+            PREMULTIPLIED_TABLE[index] = premultiply(lowerEdge);
+            SPLIT[index]               = lowerEdge != upperEdge || lowerSegment != upperSegment;
+            SEGMENTS[index]            = lowerSegment == upperSegment ? lowerSegment : -1;
+            lowerSegment               = upperSegment;
+            lowerEdge                  = upperEdge;
+        }
+        for (Stop stop : sortedStops) {
+            double angle = stop.getOffset() * 360.0;
+            int    index = lutIndex(angle);
+            if (index >= FROM_INDEX && index < TO_INDEX) { SPLIT[index] = true; SEGMENTS[index] = -1; }
+            // A stop at the lower edge of an entry also changes the color of the entry before
+            if (angle * LUT_FACTOR == Math.floor(angle * LUT_FACTOR)) {
+                index = lutIndex(angle - 1.0 / LUT_FACTOR);
+                if (index >= FROM_INDEX && index < TO_INDEX) { SPLIT[index] = true; SEGMENTS[index] = -1; }
+            }
+        }
+    }
+
+    // Split flags as int values for the vectorized rasterizer
+    private int[] getSplitFlags() {
+        if (null != splitFlags) return splitFlags;
+        int[] flags = new int[LUT_SIZE];
+        for (int index = 0 ; index < LUT_SIZE ; index++) { flags[index] = lutSplit[index] ? 1 : 0; }
+        splitFlags = flags;
+        return splitFlags;
+    }
+
+    private int argbAt(final int[] LUT, final double ANGLE) {
+        int index = lutIndex(ANGLE);
+        return lutSplit[index] ? toArgb(colorAt(ANGLE, lutSegments[index])) : LUT[index];
+    }
+    private int argbAt(final int[] LUT, final int INDEX, final double DX, final double DY) {
+        if (!lutSplit[INDEX]) return LUT[INDEX];
+        // Within one segment the angle is only needed to find the rounding steps, so the cheap approximation will do
+        int segment = lutSegments[INDEX];
+        return toArgb(colorAt(segment < 0 ? PolarField.angle(DX, DY) : PolarField.angle(INDEX, DX, DY), segment));
+    }
+
+    // Entries without a stop lie in one segment, so only entries with a stop have to search it
+    private Color colorAt(final double ANGLE, final int SEGMENT) {
+        if (SEGMENT < 0) return colorAt(ANGLE, Color.TRANSPARENT);
+        double offsetI      = (sortedStops.get(SEGMENT).getOffset() * 360.0);
+        double offsetIPlus1 = (sortedStops.get(SEGMENT + 1).getOffset() * 360.0);
+        double fraction     = (ANGLE - offsetI) / (offsetIPlus1 - offsetI);
+        return interpolation.interpolate(sortedStops.get(SEGMENT).getColor(), sortedStops.get(SEGMENT + 1).getColor(), fraction);
+    }
+    /**
+     * Returns the index of the stop that starts the segment which contains
+     * the given angle or -1 if there is no such segment. The search starts at
+     * the given segment, so the angles have to be increasing.
+     */
+    private int segmentAt(final int FROM_SEGMENT, final double ANGLE) {
+        int lastStop = sortedStops.size() - 1;
+        int segment  = Math.max(0, FROM_SEGMENT);
+        while (segment < lastStop && Double.compare(ANGLE, sortedStops.get(segment + 1).getOffset() * 360.0) >= 0) { segment++; }
+        return segment < lastStop && Double.compare(ANGLE, sortedStops.get(segment).getOffset() * 360.0) >= 0 ? segment : -1;
+    }
+    private int argbAt(final double ANGLE, final int SEGMENT) {
+        return SEGMENT < 0 ? toArgb(Color.TRANSPARENT) : toArgb(colorAt(ANGLE, SEGMENT));
+    }
+    private Color colorAt(final double ANGLE, final Color DEFAULT_COLOR) {
+        Color color                 = DEFAULT_COLOR;
+        int   calculatedStopsLength = sortedStops.size() - 1;
+        for (int i = 0; i < calculatedStopsLength; i++) {
+            double offsetI      = (sortedStops.get(i).getOffset() * 360.0);
+            double offsetIPlus1 = (sortedStops.get(i + 1).getOffset() * 360.0);
+            if (Double.compare(ANGLE, offsetI) >= 0 &&
+                Double.compare(ANGLE, offsetIPlus1) < 0) {
+                double fraction = (ANGLE - offsetI) / (offsetIPlus1 - offsetI);
+                color = interpolation.interpolate(sortedStops.get(i).getColor(), sortedStops.get(i + 1).getColor(), fraction);
+            }
+        }
+        return color;
+    }
+
+    /**
+     * Returns true if the rasterizers use the jdk.incubator.vector module.
+     * This is the case if the module was added at runtime with
+     * --add-modules jdk.incubator.vector and vectorization was not disabled
+     * with the system property eu.hansolo.regulators.vectorize=false,
+     * otherwise the scalar rasterizers will be used.
+     */
+    public static boolean isVectorized() { return VECTORIZED; }
+
+    private static boolean isVectorizationEnabled() {
+        if ("false".equals(System.getProperty("eu.hansolo.regulators.vectorize"))) return false;
+        try {
+            return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    static int lutIndex(final double ANGLE) {
+        int index = (int) (ANGLE * LUT_FACTOR);
+        return index < 0 ? 0 : index >= LUT_SIZE ? LUT_SIZE - 1 : index;
+    }
+
+    private static int toArgb(final Color COLOR) {
+        int a = (int) Math.round(COLOR.getOpacity() * 255.0);
+        int r = (int) Math.round(COLOR.getRed()     * 255.0);
+        int g = (int) Math.round(COLOR.getGreen()   * 255.0);
+        int b = (int) Math.round(COLOR.getBlue()    * 255.0);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    // Same rounding as the conversion done by the WritableImage for non premultiplied colors
+    private static int premultiply(final int ARGB) {
+        int a = ARGB >>> 24;
+        if (a == 0xFF) return ARGB;
+        if (a == 0x00) return 0x00000000;
+        int r = (((ARGB >> 16) & 0xFF) * a + 127) / 255;
+        int g = (((ARGB >>  8) & 0xFF) * a + 127) / 255;
+        int b = (( ARGB        & 0xFF) * a + 127) / 255;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int deriveAlpha(final int ARGB, final double OPACITY_FACTOR) {
+        int a = (int) Math.round((ARGB >>> 24) * OPACITY_FACTOR);
+        return (a << 24) | (ARGB & 0x00FFFFFF);
     }
 
     private List<Stop> calculate(final List<Stop> STOPS, final double OFFSET) {
-        List<Stop> stops = new ArrayList<>(STOPS.size());
-        final BigDecimal STEP = new BigDecimal(Double.MIN_VALUE);
+        // Shift the offsets, a stop that ends up at 0 will be placed at 0 and 1
+        int      noOfStops = 0;
+        double[] offsets   = new double[STOPS.size() * 2 + 2];
+        Color[]  colors    = new Color[offsets.length];
         for (Stop stop : STOPS) {
-            BigDecimal newOffsetBD = new BigDecimal(stop.getOffset() + OFFSET).remainder(BigDecimal.ONE);
-            if (newOffsetBD.equals(BigDecimal.ZERO)) {
-                newOffsetBD = BigDecimal.ONE;
-                stops.add(new Stop(Double.MIN_VALUE, stop.getColor()));
+            double newOffset = (stop.getOffset() + OFFSET) % 1.0;
+            if (Double.compare(newOffset, 0.0) == 0 || Double.compare(newOffset, -0.0) == 0) {
+                newOffset = 1.0;
+                noOfStops = putStop(offsets, colors, noOfStops, Double.MIN_VALUE, stop.getColor());
             } else if (Double.compare((stop.getOffset() + OFFSET), 1.0) > 0) {
-                newOffsetBD = newOffsetBD.subtract(STEP);
+                newOffset -= Double.MIN_VALUE;
             }
-            stops.add(new Stop(newOffsetBD.doubleValue(), stop.getColor()));
+            noOfStops = putStop(offsets, colors, noOfStops, newOffset, stop.getColor());
         }
 
-        HashMap<Double, Color> stopMap = new LinkedHashMap<>(stops.size());
-        for (Stop stop : stops) { stopMap.put(stop.getOffset(), stop.getColor()); }
+        // Sort the stops by offset
+        for (int i = 1 ; i < noOfStops ; i++) {
+            double offset = offsets[i];
+            Color  color  = colors[i];
+            int    j      = i - 1;
+            while (j >= 0 && Double.compare(offsets[j], offset) > 0) {
+                offsets[j + 1] = offsets[j];
+                colors[j + 1]  = colors[j];
+                j--;
+            }
+            offsets[j + 1] = offset;
+            colors[j + 1]  = color;
+        }
 
-        List<Stop>        sortedStops     = new ArrayList<>(stops.size());
-        SortedSet<Double> sortedFractions = new TreeSet<>(stopMap.keySet());
-        if (sortedFractions.last() < 1) {
-            stopMap.put(1.0, stopMap.get(sortedFractions.first()));
-            sortedFractions.add(1.0);
+        // Make sure the stops cover the range from 0 to 1
+        if (offsets[noOfStops - 1] < 1) {
+            offsets[noOfStops] = 1.0;
+            colors[noOfStops]  = colors[0];
+            noOfStops++;
         }
-        if (sortedFractions.first() > 0) {
-            stopMap.put(0.0, stopMap.get(sortedFractions.last()));
-            sortedFractions.add(0.0);
+        if (offsets[0] > 0) {
+            System.arraycopy(offsets, 0, offsets, 1, noOfStops);
+            System.arraycopy(colors, 0, colors, 1, noOfStops);
+            offsets[0] = 0.0;
+            colors[0]  = colors[noOfStops];
+            noOfStops++;
         }
-        for (double fraction : sortedFractions) { sortedStops.add(new Stop(fraction, stopMap.get(fraction))); }
 
+        List<Stop> sortedStops = new ArrayList<>(noOfStops);
+        for (int i = 0 ; i < noOfStops ; i++) { sortedStops.add(new Stop(offsets[i], colors[i])); }
         return sortedStops;
     }
 
+    // A stop between two stops of the same color lies within a segment of one color, so the gradient stays the same without it
+    private static List<Stop> removeRedundantStops(final List<Stop> STOPS) {
+        int        lastStop = STOPS.size() - 1;
+        List<Stop> stops    = new ArrayList<>(STOPS.size());
+        for (int i = 0 ; i <= lastStop ; i++) {
+            Color color = STOPS.get(i).getColor();
+            if (i > 0 && i < lastStop && color.equals(STOPS.get(i - 1).getColor()) && color.equals(STOPS.get(i + 1).getColor())) continue;
+            stops.add(STOPS.get(i));
+        }
+        return stops;
+    }
+
+    // Adds the stop or replaces the color of an existing stop with the same offset
+    private static int putStop(final double[] OFFSETS, final Color[] COLORS, final int NO_OF_STOPS, final double OFFSET, final Color COLOR) {
+        for (int i = 0 ; i < NO_OF_STOPS ; i++) {
+            if (Double.compare(OFFSETS[i], OFFSET) == 0) {
+                COLORS[i] = COLOR;
+                return NO_OF_STOPS;
+            }
+        }
+        OFFSETS[NO_OF_STOPS] = OFFSET;
+        COLORS[NO_OF_STOPS]  = COLOR;
+        return NO_OF_STOPS + 1;
+    }
+
     private List<Stop> normalizeStops(final Stop... STOPS) {
         return normalizeStops(0, Arrays.asList(STOPS));
     }
@@ -16,6 +16,10 @@
 
 package eu.hansolo.regulators;
 
+import eu.hansolo.regulators.ConicalGradient.ScaleDirection;
+import javafx.animation.Animation.Status;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.BooleanPropertyBase;
 import javafx.beans.property.DoubleProperty;
@@ -43,20 +47,23 @@ import javafx.scene.layout.Pane;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
+import javafx.scene.paint.ImagePattern;
 import javafx.scene.paint.Stop;
 import javafx.scene.shape.Arc;
 import javafx.scene.shape.ArcType;
 import javafx.scene.shape.Circle;
-import javafx.scene.shape.Rectangle;
 import javafx.scene.shape.Shape;
 import javafx.scene.shape.StrokeLineCap;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.scene.transform.Rotate;
 import javafx.scene.transform.Scale;
+import javafx.util.Duration;
 import org.kordamp.ikonli.Ikon;
 import org.kordamp.ikonli.javafx.FontIcon;
 
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -65,6 +72,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -72,12 +80,22 @@ import java.util.TreeSet;
  */
 public class FeedbackRegulator extends Region implements RegulatorControl {
     private static final Color          DEFAULT_COLOR    = Color.rgb(66,71,79);
+    private static final Logger         LOGGER           = System.getLogger(FeedbackRegulator.class.getName());
     private static final double         PREFERRED_WIDTH  = 250;
     private static final double         PREFERRED_HEIGHT = 250;
     private static final double         MINIMUM_WIDTH    = 50;
     private static final double         MINIMUM_HEIGHT   = 50;
     private static final double         MAXIMUM_WIDTH    = 1024;
     private static final double         MAXIMUM_HEIGHT   = 1024;
+    private static final int            DIRTY_SIZE       = 1;
+    private static final int            DIRTY_COLOR      = 1 << 1;
+    private static final int            DIRTY_INDICATOR  = 1 << 2;
+    private static final int            DIRTY_SYMBOL     = 1 << 3;
+    private static final int            DIRTY_ICON       = 1 << 4;
+    private static final int            DIRTY_TEXT       = 1 << 5;
+    private static final int            DIRTY_TARGET     = 1 << 6;
+    private static final int            DIRTY_CURRENT    = 1 << 7;
+    private static final int            DIRTY_ALL        = (1 << 8) - 1;
     private              double         BAR_START_ANGLE  = -130;
     private              double         ANGLE_RANGE      = 280;
     private final        RegulatorEvent ADJUSTING_EVENT  = new RegulatorEvent(RegulatorEvent.ADJUSTING);
@@ -118,6 +136,11 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
     private String                      formatString;
     private double                      angleStep;
     private ConicalGradient             barGradient;
+    private List<Stop>                  barStops;
+    private long                        barPatternGeneration;
+    private PauseTransition             barPatternTimer;
+    private double                      renderScale;
+    private int                         dirty;
 
 
     // ******************** Constructors **************************************
@@ -128,6 +151,7 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
             @Override public void set(final double VALUE) {
                 super.set(clamp(-Double.MAX_VALUE, maxValue.get(), VALUE));
                 angleStep = ANGLE_RANGE / (maxValue.get() - minValue.get());
+                markDirty(DIRTY_TARGET | DIRTY_CURRENT);
             }
             @Override public Object getBean() { return FeedbackRegulator.this; }
             @Override public String getName() { return "minValue"; }
@@ -136,6 +160,7 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
             @Override public void set(final double VALUE) {
                 super.set(clamp(minValue.get(), Double.MAX_VALUE, VALUE));
                 angleStep = ANGLE_RANGE / (maxValue.get() - minValue.get());
+                markDirty(DIRTY_TARGET | DIRTY_CURRENT);
             }
             @Override public Object getBean() { return FeedbackRegulator.this; }
             @Override public String getName() { return "maxValue"; }
@@ -143,13 +168,7 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
         targetValue    = new DoublePropertyBase(0) {
             @Override public void set(final double VALUE) {
                 super.set(clamp(minValue.get(), maxValue.get(), VALUE));
-                if ((int) get() == (int) currentValue.get()) {
-                    targetText.setVisible(false);
-                    overlayBarArc.setVisible(false);
-                } else {
-                    targetText.setVisible(true);
-                    overlayBarArc.setVisible(true);
-                }
+                markDirty(DIRTY_TARGET);
             }
             @Override public Object getBean() { return FeedbackRegulator.this; }
             @Override public String getName() { return "targetValue"; }
@@ -157,18 +176,8 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
         currentValue   = new DoublePropertyBase(0) {
             @Override public void set(final double VALUE) {
                 super.set(clamp(minValue.get(), maxValue.get(), VALUE));
-                if ((int) targetValue.get() == (int) get()) {
-                    fireEvent(ADJUSTED_EVENT);
-                    targetText.setVisible(false);
-                    overlayBarArc.setVisible(false);
-                } else {
-                    fireEvent(ADJUSTING_EVENT);
-                    targetText.setVisible(true);
-                    overlayBarArc.setVisible(true);
-                }
-                setText(get());
-                drawOverlayBar(get());
-                redraw();
+                fireEvent((int) targetValue.get() == (int) get() ? ADJUSTED_EVENT : ADJUSTING_EVENT);
+                markDirty(DIRTY_CURRENT);
             }
             @Override public Object getBean() { return FeedbackRegulator.this; }
             @Override public String getName() { return "currentValue"; }
@@ -177,7 +186,7 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
             @Override public void set(final int VALUE) {
                 super.set(clamp(0, 2, VALUE));
                 formatString = new StringBuilder("%.").append(Integer.toString(decimals.get())).append("f").append(getUnit()).toString();
-                redraw();
+                markDirty(DIRTY_TARGET | DIRTY_CURRENT);
             }
             @Override public Object getBean() { return FeedbackRegulator.this; }
             @Override public String getName() { return "decimals"; }
@@ -186,7 +195,7 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
             @Override public void set(final String VALUE) {
                 super.set(VALUE.equals("%") ? "%%" : VALUE);
                 formatString = new StringBuilder("%.").append(Integer.toString(decimals.get())).append("f").append(get()).toString();
-                redraw();
+                markDirty(DIRTY_TARGET | DIRTY_CURRENT);
             }
             @Override public Object getBean() { return FeedbackRegulator.this; }
             @Override public String getName() { return "unit"; }
@@ -194,7 +203,7 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
         symbolColor    = new ObjectPropertyBase<Color>(Color.TRANSPARENT) {
             @Override protected void invalidated() {
                 set(null == get() ? Color.WHITE : get());
-                redraw();
+                markDirty(DIRTY_SYMBOL);
             }
             @Override public Object getBean() { return FeedbackRegulator.this; }
             @Override public String getName() { return "symbolColor"; }
@@ -202,7 +211,7 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
         iconColor      = new ObjectPropertyBase<Color>(Color.TRANSPARENT) {
             @Override protected void invalidated() {
                 set(null == get() ? Color.WHITE : get());
-                redraw();
+                markDirty(DIRTY_ICON);
             }
             @Override public Object getBean() { return FeedbackRegulator.this; }
             @Override public String getName() { return "iconColor"; }
@@ -210,7 +219,7 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
         textColor      = new ObjectPropertyBase<Color>(Color.WHITE) {
             @Override protected void invalidated() {
                 set(null == get() ? Color.WHITE : get());
-                redraw();
+                markDirty(DIRTY_TEXT);
             }
             @Override public Object getBean() { return FeedbackRegulator.this; }
             @Override public String getName() { return "textColor"; }
@@ -218,33 +227,24 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
         color          = new ObjectPropertyBase<Color>(DEFAULT_COLOR) {
             @Override protected void invalidated() {
                 super.set(null == get() ? DEFAULT_COLOR : get());
-                redraw();
+                markDirty(DIRTY_COLOR | DIRTY_INDICATOR);
             }
             @Override public Object getBean() { return FeedbackRegulator.this; }
             @Override public String getName() { return "color"; }
         };
         indicatorColor = new ObjectPropertyBase<Color>(Color.WHITE) {
-            @Override protected void invalidated() { indicatorGlow.setColor(get()); }
+            @Override protected void invalidated() { markDirty(DIRTY_INDICATOR); }
             @Override public Object getBean() { return FeedbackRegulator.this; }
             @Override public String getName() { return "indicatorColor"; }
         };
         selected       = new BooleanPropertyBase(false) {
-            @Override protected void invalidated() {
-                if (get()) {
-                    indicator.setFill(getIndicatorColor());
-                    indicator.setStroke(getIndicatorColor().darker().darker());
-                    indicator.setEffect(indicatorGlow);
-                } else {
-                    indicator.setFill(getColor().darker());
-                    indicator.setStroke(getColor().darker().darker());
-                    indicator.setEffect(null);
-                }
-            }
+            @Override protected void invalidated() { markDirty(DIRTY_INDICATOR); }
             @Override public Object getBean() { return FeedbackRegulator.this; }
             @Override public String getName() { return "selected"; }
         };
         formatString   = new StringBuilder("%.").append(Integer.toString(decimals.get())).append("f").append(unit.get()).toString();
         angleStep      = ANGLE_RANGE / (maxValue.get() - minValue.get());
+        dirty          = DIRTY_ALL;
         init();
         initGraphics();
         registerListeners();
@@ -284,13 +284,18 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
             new Stop(1.0, Color.rgb(125, 255, 190))
         };
 
-        barGradient = new ConicalGradient(stops);
+        barStops    = Arrays.asList(stops);
+        barGradient = new ConicalGradient(barStops);
 
         barArc = new Arc(PREFERRED_WIDTH * 0.5, PREFERRED_HEIGHT * 0.5, PREFERRED_WIDTH * 0.46, PREFERRED_HEIGHT * 0.46, BAR_START_ANGLE, 0);
         barArc.setType(ArcType.OPEN);
         barArc.setStrokeLineCap(StrokeLineCap.ROUND);
         barArc.setFill(null);
-        barArc.setStroke(barGradient.getImagePattern(new Rectangle(0, 0, PREFERRED_WIDTH, PREFERRED_HEIGHT)));
+        renderScale     = 1.0;
+        updateBarPattern(PREFERRED_WIDTH, PREFERRED_WIDTH);
+
+        barPatternTimer = new PauseTransition(Duration.millis(150));
+        barPatternTimer.setOnFinished(e -> updateBarPattern(size, size));
 
         overlayBarArc = new Arc(PREFERRED_WIDTH * 0.5, PREFERRED_HEIGHT * 0.5, PREFERRED_WIDTH * 0.46, PREFERRED_HEIGHT * 0.46, BAR_START_ANGLE, 0);
         overlayBarArc.setType(ArcType.OPEN);
@@ -351,11 +356,15 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
     }
 
     private void registerListeners() {
-        widthProperty().addListener(o -> resize());
-        heightProperty().addListener(o -> resize());
+        widthProperty().addListener(o -> markDirty(DIRTY_SIZE));
+        heightProperty().addListener(o -> markDirty(DIRTY_SIZE));
+        RenderScale.addListener(this, () -> {
+            double scale = RenderScale.get(this);
+            if (Double.compare(scale, renderScale) == 0) return;
+            renderScale = scale;
+            if (size > 0) { updateBarPattern(size, size); }
+        });
         disabledProperty().addListener(o -> setOpacity(isDisabled() ? 0.4 : 1.0));
-        targetValueProperty().addListener(o -> rotate(targetValue.get()));
-        currentValueProperty().addListener(o -> setText(currentValue.get()));
         ring.addEventHandler(MouseEvent.MOUSE_PRESSED, e -> { if (isDisabled()) return; touchRotate(e.getSceneX(), e.getSceneY()); });
         ring.addEventHandler(MouseEvent.MOUSE_DRAGGED, e -> { if (isDisabled()) return; touchRotate(e.getSceneX(), e.getSceneY()); });
         ring.addEventHandler(MouseEvent.MOUSE_RELEASED, e -> { if (isDisabled()) return; fireEvent(TARGET_SET_EVENT); } );
@@ -414,8 +423,8 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
     public List<Stop> getGradientStops() { return barGradient.getStops(); }
     public void setGradientStops(final Stop... STOPS) { setGradientStops(Arrays.asList(STOPS)); }
     public void setGradientStops(final List<Stop> STOPS) {
-        barGradient = new ConicalGradient(reorderStops(STOPS));
-        barArc.setStroke(barGradient.getImagePattern(new Rectangle(0, 0, PREFERRED_WIDTH, PREFERRED_HEIGHT)));
+        barStops = reorderStops(STOPS);
+        recolorBarPattern(size > 0 ? size : PREFERRED_WIDTH);
     }
 
     private List<Stop> reorderStops(final Stop... STOPS) { return reorderStops(Arrays.asList(STOPS)); }
@@ -459,14 +468,12 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
                                                .toString());
             symbol.setVisible(true);
         }
-        symbol.setCache(false);
-        resize();
-        symbol.setCache(true);
+        markDirty(DIRTY_SIZE);
     }
 
     public void setIcon(final Ikon ICON) {
         icon.setIconCode(ICON);
-        resize();
+        markDirty(DIRTY_SIZE);
     }
 
     private <T extends Number> T clamp(final T MIN, final T MAX, final T VALUE) {
@@ -516,6 +523,62 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
         text.setLayoutX((size - text.getLayoutBounds().getWidth()) * 0.5);
     }
 
+    private void resizeBarPattern(final double SIZE) {
+        if (Status.RUNNING == barPatternTimer.getStatus()) {
+            // Live resize, use the raster of the size bucket until the size settles
+            updateBarPattern(GradientCache.getBucketSize(SIZE), SIZE);
+        } else {
+            updateBarPattern(SIZE, SIZE);
+        }
+        barPatternTimer.playFromStart();
+    }
+
+    // The bar arc only samples the ring around 0.46 * size with a stroke width of 0.04 * size
+    private void updateBarPattern(final double RASTER_SIZE, final double SIZE) {
+        final long GENERATION = ++barPatternGeneration;
+        CompletableFuture<ImagePattern> future = GradientCache.getRingImagePatternAsync(barStops, ScaleDirection.CLOCKWISE, 0, RASTER_SIZE, RASTER_SIZE * 0.44 - 1, RASTER_SIZE * 0.48 + 1, renderScale);
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            barArc.setStroke(scalePattern(future.join(), SIZE));
+            return;
+        }
+        // Show a low resolution version until the full resolution pattern is ready
+        barArc.setStroke(GradientCache.getPlaceholderPattern(barStops, ScaleDirection.CLOCKWISE, 0, SIZE, SIZE));
+        future.whenComplete((pattern, error) -> Platform.runLater(() -> {
+            if (GENERATION != barPatternGeneration) return;
+            if (null == error) {
+                barArc.setStroke(scalePattern(pattern, SIZE));
+            } else {
+                // Don't keep the placeholder, render the pattern on the FX thread instead
+                LOGGER.log(Level.WARNING, "Rendering the bar pattern in the background failed", error);
+                barArc.setStroke(scalePattern(GradientCache.getRingImagePattern(barStops, ScaleDirection.CLOCKWISE, 0, RASTER_SIZE, RASTER_SIZE * 0.44 - 1, RASTER_SIZE * 0.48 + 1, renderScale), SIZE));
+            }
+        }));
+    }
+
+    /**
+     * Only the colors of the bar change, so the ring of the bar gradient will
+     * be recolored in place instead of rendering a new ring for the cache.
+     * The gradient will only be created again if the size has changed.
+     */
+    private void recolorBarPattern(final double SIZE) {
+        final int    RASTER_SIZE = (int) Math.ceil(SIZE * renderScale);
+        final double CENTER      = RASTER_SIZE * 0.5;
+        double[]     center      = barGradient.getCenter();
+        if (Double.compare(center[0], CENTER) != 0 || Double.compare(center[1], CENTER) != 0) {
+            barGradient = new ConicalGradient(CENTER, CENTER, ScaleDirection.CLOCKWISE, barStops);
+        } else {
+            barGradient.setStops(barStops);
+        }
+        // A pattern of the cache that is still being rendered for the old colors must not replace the recolored one
+        barPatternGeneration++;
+        barArc.setStroke(new ImagePattern(barGradient.getRingImage(RASTER_SIZE, (SIZE * 0.44 - 1) * renderScale, (SIZE * 0.48 + 1) * renderScale), 0, 0, SIZE, SIZE, false));
+    }
+
+    private ImagePattern scalePattern(final ImagePattern PATTERN, final double SIZE) {
+        if (Double.compare(PATTERN.getWidth(), SIZE) == 0 && Double.compare(PATTERN.getHeight(), SIZE) == 0) { return PATTERN; }
+        return new ImagePattern(PATTERN.getImage(), 0, 0, SIZE, SIZE, false);
+    }
+
     private void drawBar(final double VALUE) {
         barArc.setLength(-(VALUE - minValue.get()) * angleStep);
     }
@@ -540,7 +603,7 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
             barArc.setRadiusX(size * 0.46);
             barArc.setRadiusY(size * 0.46);
             barArc.setStrokeWidth(size * 0.04);
-            barArc.setStroke(barGradient.getImagePattern(new Rectangle(0, 0, size, size)));
+            resizeBarPattern(size);
             drawBar(maxValue.get());
             barArc.setCache(true);
             barArc.setCacheHint(CacheHint.SPEED);
@@ -550,7 +613,6 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
             overlayBarArc.setRadiusX(size * 0.46);
             overlayBarArc.setRadiusY(size * 0.46);
             overlayBarArc.setStrokeWidth(size * 0.03);
-            drawOverlayBar(currentValue.get());
 
             double shadowRadius = clamp(1.0, 2.0, size * 0.004);
             dropShadow.setRadius(shadowRadius);
@@ -596,23 +658,60 @@ public class FeedbackRegulator extends Region implements RegulatorControl {
 
             iconPane.setPrefSize(size * 0.112, size * 0.112);
             iconPane.relocate((size - iconPane.getPrefWidth()) * 0.5, size * 0.62);
-
-            redraw();
         }
     }
 
+    /**
+     * Marks the given layers as dirty, they will be redrawn once in the next
+     * layout pass no matter how many properties changed in between.
+     */
+    private void markDirty(final int LAYERS) {
+        if (0 == dirty) { requestLayout(); }
+        dirty |= LAYERS;
+    }
+
+    @Override protected void layoutChildren() {
+        redraw();
+        super.layoutChildren();
+    }
+
     private void redraw() {
-        pane.setBackground(new Background(new BackgroundFill(color.get().darker(), new CornerRadii(1024), Insets.EMPTY)));
-        mainCircle.setFill(color.get().darker().darker());
-        ring.setFill(color.get());
-        indicator.setFill(isSelected() ? indicatorColor.get() : color.get().darker());
-        indicator.setStroke(isSelected() ? indicatorColor.get().darker().darker() : color.get().darker().darker());
-        symbol.setBackground(new Background(new BackgroundFill(symbolColor.get(), CornerRadii.EMPTY, Insets.EMPTY)));
-        icon.setFill(iconColor.get());
-        targetText.setFill(textColor.get().darker());
-        text.setFill(textColor.get());
-        rotate(targetValue.get());
-        setText(currentValue.get());
+        int layers = dirty;
+        dirty = 0;
+        if (0 == layers) return;
+
+        // The text sizes and the overlay bar length depend on the size
+        if ((layers & DIRTY_SIZE) != 0) {
+            resize();
+            layers |= DIRTY_TARGET | DIRTY_CURRENT;
+        }
+        if ((layers & DIRTY_COLOR) != 0) {
+            pane.setBackground(new Background(new BackgroundFill(color.get().darker(), new CornerRadii(1024), Insets.EMPTY)));
+            mainCircle.setFill(color.get().darker().darker());
+            ring.setFill(color.get());
+        }
+        if ((layers & DIRTY_INDICATOR) != 0) {
+            indicatorGlow.setColor(indicatorColor.get());
+            indicator.setFill(isSelected() ? indicatorColor.get() : color.get().darker());
+            indicator.setStroke(isSelected() ? indicatorColor.get().darker().darker() : color.get().darker().darker());
+            indicator.setEffect(isSelected() ? indicatorGlow : null);
+        }
+        if ((layers & DIRTY_SYMBOL) != 0) { symbol.setBackground(new Background(new BackgroundFill(symbolColor.get(), CornerRadii.EMPTY, Insets.EMPTY))); }
+        if ((layers & DIRTY_ICON)   != 0) { icon.setFill(iconColor.get()); }
+        if ((layers & DIRTY_TEXT)   != 0) {
+            targetText.setFill(textColor.get().darker());
+            text.setFill(textColor.get());
+        }
+        if ((layers & DIRTY_TARGET)  != 0) { rotate(targetValue.get()); }
+        if ((layers & DIRTY_CURRENT) != 0) {
+            setText(currentValue.get());
+            drawOverlayBar(currentValue.get());
+        }
+        if ((layers & (DIRTY_TARGET | DIRTY_CURRENT)) != 0) {
+            boolean adjusting = (int) targetValue.get() != (int) currentValue.get();
+            targetText.setVisible(adjusting);
+            overlayBarArc.setVisible(adjusting);
+        }
     }
 
 
@@ -0,0 +1,463 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.regulators;
+
+import eu.hansolo.regulators.ConicalGradient.ScaleDirection;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.paint.ImagePattern;
+import javafx.scene.paint.Stop;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+
+/**
+ * Process wide cache of conical gradient rasters that will be shared by all
+ * controls which use the same stops, direction, offset and size.
+ * The rasters are stored palette indexed and will only be expanded to an
+ * image as long as that image is in use by a control.
+ * The least recently used rasters will be evicted as soon as the cached
+ * rasters and the expanded images that are still reachable need more than
+ * the given number of bytes. Rasters whose image is in use will be kept,
+ * because evicting them would not free the image.
+ * If a cache directory is set, calculated rasters will also be written to
+ * that directory on the executor and memory mapped from there on the next
+ * start, so an unchanged gradient doesn't have to be calculated again.
+ * Mapped rasters don't use the heap and have their own budget, the least
+ * recently used files will be deleted as soon as the directory needs more
+ * than the given number of bytes.
+ */
+public class GradientCache {
+    public  static final long                                          DEFAULT_MAX_BYTES        = 32 * 1024 * 1024;
+    public  static final long                                          DEFAULT_MAX_MAPPED_BYTES = 128 * 1024 * 1024;
+    public  static final long                                          DEFAULT_MAX_DISK_BYTES   = 256 * 1024 * 1024;
+    public  static final int                                           BUCKET_SIZE              = 32;
+    private static final int                                           PLACEHOLDER_SIZE         = 32;
+    private static final Map<Key, Entry>                               CACHE                    = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Map<Key, CompletableFuture<ImagePattern>>     PENDING                  = new HashMap<>();
+    private static final Set<ExpandedImage>                            EXPANDED                 = new HashSet<>();
+    private static final ReferenceQueue<Image>                         COLLECTED                = new ReferenceQueue<>();
+    private static       Executor                                      executor                 = ForkJoinPool.commonPool();
+    private static       long                                          maxBytes                 = DEFAULT_MAX_BYTES;
+    private static       long                                          usedBytes                = 0;
+    private static       long                                          expandedBytes            = 0;
+    private static       long                                          maxMappedBytes           = DEFAULT_MAX_MAPPED_BYTES;
+    private static       long                                          mappedBytes              = 0;
+    private static       long                                          maxDiskBytes             = DEFAULT_MAX_DISK_BYTES;
+    private static       Path                                          directory                = null;
+
+
+    // ******************** Methods *******************************************
+    public static ImagePattern getImagePattern(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double WIDTH, final double HEIGHT) {
+        return getImagePattern(STOPS, DIRECTION, OFFSET, WIDTH, HEIGHT, 1.0);
+    }
+    /**
+     * Returns a pattern of the given logical size whose raster was calculated
+     * at the given render scale, e.g. 2.0 on a screen with 200% scaling.
+     * Rasters of different scales are cached separately.
+     */
+    public static ImagePattern getImagePattern(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double WIDTH, final double HEIGHT, final double SCALE) {
+        return getImagePattern(STOPS, DIRECTION, OFFSET, WIDTH, HEIGHT, SCALE, ColorInterpolation.SRGB);
+    }
+    /**
+     * Returns a pattern whose colors between the stops are interpolated in
+     * the given color space, rasters of different interpolations are cached
+     * separately.
+     */
+    public static ImagePattern getImagePattern(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double WIDTH, final double HEIGHT, final double SCALE, final ColorInterpolation INTERPOLATION) {
+        return getImagePattern(new Key(STOPS, DIRECTION, OFFSET, WIDTH, HEIGHT, 0, 0, SCALE, INTERPOLATION), WIDTH, HEIGHT);
+    }
+    /**
+     * Returns a pattern of the given size where only the ring between the inner
+     * and the outer radius around the center contains the gradient.
+     */
+    public static ImagePattern getRingImagePattern(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double SIZE, final double INNER_RADIUS, final double OUTER_RADIUS) {
+        return getRingImagePattern(STOPS, DIRECTION, OFFSET, SIZE, INNER_RADIUS, OUTER_RADIUS, 1.0);
+    }
+    public static ImagePattern getRingImagePattern(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double SIZE, final double INNER_RADIUS, final double OUTER_RADIUS, final double SCALE) {
+        return getRingImagePattern(STOPS, DIRECTION, OFFSET, SIZE, INNER_RADIUS, OUTER_RADIUS, SCALE, ColorInterpolation.SRGB);
+    }
+    public static ImagePattern getRingImagePattern(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double SIZE, final double INNER_RADIUS, final double OUTER_RADIUS, final double SCALE, final ColorInterpolation INTERPOLATION) {
+        return getImagePattern(new Key(STOPS, DIRECTION, OFFSET, SIZE, SIZE, INNER_RADIUS, OUTER_RADIUS, SCALE, INTERPOLATION), SIZE, SIZE);
+    }
+    private static ImagePattern getImagePattern(final Key KEY, final double WIDTH, final double HEIGHT) {
+        Entry entry;
+        synchronized (CACHE) { entry = CACHE.get(KEY); }
+        if (null == entry) { entry = put(KEY, createEntry(KEY)); }
+        return entry.getPattern(WIDTH, HEIGHT);
+    }
+
+    /**
+     * Returns a future that will be completed with the pattern as soon as it
+     * has been calculated on the executor of the cache. If the pattern is
+     * already cached the returned future is already completed. Concurrent
+     * requests for the same pattern will share one calculation.
+     */
+    public static CompletableFuture<ImagePattern> getImagePatternAsync(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double WIDTH, final double HEIGHT) {
+        return getImagePatternAsync(STOPS, DIRECTION, OFFSET, WIDTH, HEIGHT, 1.0);
+    }
+    public static CompletableFuture<ImagePattern> getImagePatternAsync(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double WIDTH, final double HEIGHT, final double SCALE) {
+        return getImagePatternAsync(STOPS, DIRECTION, OFFSET, WIDTH, HEIGHT, SCALE, ColorInterpolation.SRGB);
+    }
+    public static CompletableFuture<ImagePattern> getImagePatternAsync(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double WIDTH, final double HEIGHT, final double SCALE, final ColorInterpolation INTERPOLATION) {
+        return getImagePatternAsync(new Key(STOPS, DIRECTION, OFFSET, WIDTH, HEIGHT, 0, 0, SCALE, INTERPOLATION), WIDTH, HEIGHT);
+    }
+    public static CompletableFuture<ImagePattern> getRingImagePatternAsync(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double SIZE, final double INNER_RADIUS, final double OUTER_RADIUS) {
+        return getRingImagePatternAsync(STOPS, DIRECTION, OFFSET, SIZE, INNER_RADIUS, OUTER_RADIUS, 1.0);
+    }
+    public static CompletableFuture<ImagePattern> getRingImagePatternAsync(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double SIZE, final double INNER_RADIUS, final double OUTER_RADIUS, final double SCALE) {
+        return getRingImagePatternAsync(STOPS, DIRECTION, OFFSET, SIZE, INNER_RADIUS, OUTER_RADIUS, SCALE, ColorInterpolation.SRGB);
+    }
+    public static CompletableFuture<ImagePattern> getRingImagePatternAsync(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double SIZE, final double INNER_RADIUS, final double OUTER_RADIUS, final double SCALE, final ColorInterpolation INTERPOLATION) {
+        return getImagePatternAsync(new Key(STOPS, DIRECTION, OFFSET, SIZE, SIZE, INNER_RADIUS, OUTER_RADIUS, SCALE, INTERPOLATION), SIZE, SIZE);
+    }
+    private static CompletableFuture<ImagePattern> getImagePatternAsync(final Key KEY, final double WIDTH, final double HEIGHT) {
+        synchronized (CACHE) {
+            Entry entry = CACHE.get(KEY);
+            if (null != entry && entry.isExpanded()) return CompletableFuture.completedFuture(entry.getPattern(WIDTH, HEIGHT));
+
+            CompletableFuture<ImagePattern> future = PENDING.get(KEY);
+            if (null != future) return future;
+
+            future = null == entry ? CompletableFuture.supplyAsync(() -> put(KEY, createEntry(KEY)).getPattern(WIDTH, HEIGHT), executor)
+                                   : CompletableFuture.supplyAsync(() -> entry.getPattern(WIDTH, HEIGHT), executor);
+            PENDING.put(KEY, future);
+            future.whenComplete((result, throwable) -> { synchronized (CACHE) { PENDING.remove(KEY); } });
+            return future;
+        }
+    }
+
+    /**
+     * Returns a cheap low resolution version of the gradient scaled to the given
+     * size that can be shown until the full resolution pattern is available.
+     */
+    public static ImagePattern getPlaceholderPattern(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double WIDTH, final double HEIGHT) {
+        ImagePattern placeholder = getImagePattern(STOPS, DIRECTION, OFFSET, PLACEHOLDER_SIZE, PLACEHOLDER_SIZE);
+        return new ImagePattern(placeholder.getImage(), 0, 0, WIDTH, HEIGHT, false);
+    }
+
+    /**
+     * Returns the given size rounded up to the next multiple of BUCKET_SIZE.
+     * Rasters of the bucket size can be scaled down to all sizes within the
+     * bucket, which avoids calculating a new raster for every pixel of size
+     * change during a live resize.
+     */
+    public static int getBucketSize(final double SIZE) {
+        return (int) Math.ceil(Math.max(1, SIZE) / BUCKET_SIZE) * BUCKET_SIZE;
+    }
+
+    public static Executor getExecutor() { synchronized (CACHE) { return executor; } }
+    public static void setExecutor(final Executor EXECUTOR) { synchronized (CACHE) { executor = null == EXECUTOR ? ForkJoinPool.commonPool() : EXECUTOR; } }
+
+    public static Path getCacheDirectory() { synchronized (CACHE) { return directory; } }
+    /**
+     * Sets the directory where calculated rasters will be stored between
+     * runs of the application, null (the default) disables the disk cache.
+     */
+    public static void setCacheDirectory(final Path DIRECTORY) { synchronized (CACHE) { directory = DIRECTORY; } }
+
+    private static Entry createEntry(final Key KEY) {
+        Path   dir  = getCacheDirectory();
+        String name = null == dir ? null : KEY.getFileName();
+        if (null != name) {
+            Image image = RasterFileCache.load(dir, name, KEY.width, KEY.height);
+            if (null != image) return new Entry(null, image, true);
+        }
+
+        ConicalGradient gradient = new ConicalGradient(0, 0, KEY.offset, KEY.direction, KEY.stops);
+        gradient.setInterpolation(KEY.interpolation);
+        IndexedRaster   raster   = KEY.isRing() ? gradient.getIndexedRingImage(KEY.width, KEY.innerRadius, KEY.outerRadius) : gradient.getIndexedImage(KEY.width, KEY.height);
+        if (null != raster) {
+            if (null != name) {
+                store(dir, name, () -> {
+                    int[] pixels = new int[KEY.width * KEY.height];
+                    raster.expand(pixels);
+                    RasterFileCache.store(dir, name, KEY.width, KEY.height, pixels);
+                });
+            }
+            return new Entry(raster, null, false);
+        }
+
+        // Too many colors for a palette, keep the image itself
+        Image image = KEY.isRing() ? gradient.getRingImage(KEY.width, KEY.innerRadius, KEY.outerRadius) : gradient.getImage(KEY.width, KEY.height);
+        if (null != name) {
+            int[] pixels = new int[KEY.width * KEY.height];
+            image.getPixelReader().getPixels(0, 0, KEY.width, KEY.height, PixelFormat.getIntArgbPreInstance(), pixels, 0, KEY.width);
+            store(dir, name, () -> RasterFileCache.store(dir, name, KEY.width, KEY.height, pixels));
+        }
+        return new Entry(null, image, false);
+    }
+
+    // Writes the raster file on the executor, so a synchronous request on the FX thread doesn't wait for the disk
+    private static void store(final Path DIRECTORY, final String NAME, final Runnable STORE) {
+        try {
+            getExecutor().execute(() -> {
+                STORE.run();
+                RasterFileCache.trim(DIRECTORY, getMaxDiskBytes());
+            });
+        } catch (RejectedExecutionException e) {
+            // The raster will be calculated again on the next start
+        }
+    }
+
+    private static Entry put(final Key KEY, final Entry ENTRY) {
+        synchronized (CACHE) {
+            Entry cachedEntry = CACHE.get(KEY);
+            if (null != cachedEntry) return cachedEntry;
+            CACHE.put(KEY, ENTRY);
+            if (ENTRY.mapped) {
+                mappedBytes += ENTRY.getBytes();
+            } else {
+                usedBytes += ENTRY.getBytes();
+            }
+            evict();
+        }
+        return ENTRY;
+    }
+
+    public static long getMaxBytes() { synchronized (CACHE) { return maxBytes; } }
+    /**
+     * Sets the number of bytes the cached rasters and the expanded images
+     * may use on the heap, memory mapped rasters are not included.
+     */
+    public static void setMaxBytes(final long MAX_BYTES) {
+        synchronized (CACHE) {
+            maxBytes = Math.max(0, MAX_BYTES);
+            evict();
+        }
+    }
+
+    /**
+     * Returns the bytes of the cached rasters plus the bytes of the expanded
+     * images that have not been collected yet.
+     */
+    public static long getUsedBytes() {
+        synchronized (CACHE) {
+            releaseCollected();
+            return usedBytes + expandedBytes;
+        }
+    }
+
+    public static long getMaxMappedBytes() { synchronized (CACHE) { return maxMappedBytes; } }
+    /**
+     * Sets the number of bytes of the rasters that will be kept memory mapped
+     * from the cache directory. They don't use the heap, but address space
+     * and page cache.
+     */
+    public static void setMaxMappedBytes(final long MAX_MAPPED_BYTES) {
+        synchronized (CACHE) {
+            maxMappedBytes = Math.max(0, MAX_MAPPED_BYTES);
+            evict();
+        }
+    }
+
+    public static long getMappedBytes() { synchronized (CACHE) { return mappedBytes; } }
+
+    public static long getMaxDiskBytes() { synchronized (CACHE) { return maxDiskBytes; } }
+    /**
+     * Sets the number of bytes the raster files in the cache directory may
+     * use, the least recently used files will be deleted after a raster has
+     * been written.
+     */
+    public static void setMaxDiskBytes(final long MAX_DISK_BYTES) { synchronized (CACHE) { maxDiskBytes = Math.max(0, MAX_DISK_BYTES); } }
+
+    public static int size() { synchronized (CACHE) { return CACHE.size(); } }
+
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+            usedBytes   = 0;
+            mappedBytes = 0;
+        }
+    }
+
+    private static void evict() {
+        releaseCollected();
+        Iterator<Entry> iterator = CACHE.values().iterator();
+        while ((usedBytes + expandedBytes > maxBytes || mappedBytes > maxMappedBytes) && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.mapped) {
+                if (mappedBytes <= maxMappedBytes) continue;
+                mappedBytes -= entry.getBytes();
+            } else {
+                if (usedBytes + expandedBytes <= maxBytes || entry.isInUse()) continue;
+                usedBytes -= entry.getBytes();
+            }
+            iterator.remove();
+        }
+    }
+
+    // The expanded image counts against the budget until it has been collected
+    private static void charge(final ExpandedImage IMAGE) {
+        synchronized (CACHE) {
+            EXPANDED.add(IMAGE);
+            expandedBytes += IMAGE.bytes;
+            evict();
+        }
+    }
+
+    private static void releaseCollected() {
+        for (Reference<? extends Image> reference = COLLECTED.poll() ; null != reference ; reference = COLLECTED.poll()) {
+            if (EXPANDED.remove(reference)) { expandedBytes -= ((ExpandedImage) reference).bytes; }
+        }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    /**
+     * Cached raster that keeps the expanded image only weakly reachable, so
+     * it can be shared by all controls that use it and will be collected as
+     * soon as no control uses it anymore.
+     */
+    private static class Entry {
+        private final IndexedRaster raster;
+        private final Image         image;
+        private final boolean       mapped;
+        private       ExpandedImage expandedImage;
+
+
+        Entry(final IndexedRaster RASTER, final Image IMAGE, final boolean MAPPED) {
+            raster = RASTER;
+            image  = IMAGE;
+            mapped = MAPPED;
+        }
+
+
+        synchronized boolean isExpanded() { return null != image || isInUse(); }
+
+        // A control still uses the image that was expanded from the raster
+        synchronized boolean isInUse() { return null != expandedImage && null != expandedImage.get(); }
+
+        ImagePattern getPattern(final double WIDTH, final double HEIGHT) {
+            Image         img;
+            ExpandedImage expanded = null;
+            synchronized (this) {
+                img = null != image ? image : null == expandedImage ? null : expandedImage.get();
+                if (null == img) {
+                    img           = raster.toImage();
+                    expandedImage = expanded = new ExpandedImage(img);
+                }
+            }
+            // Charge outside of the lock of the entry, the cache locks the cache before the entries
+            if (null != expanded) { charge(expanded); }
+            return new ImagePattern(img, 0, 0, WIDTH, HEIGHT, false);
+        }
+
+        long getBytes() { return null == raster ? 4L * (long) image.getWidth() * (long) image.getHeight() : raster.getBytes(); }
+    }
+
+    private static class ExpandedImage extends WeakReference<Image> {
+        private final long bytes;
+
+
+        ExpandedImage(final Image IMAGE) {
+            super(IMAGE, COLLECTED);
+            bytes = 4L * (long) IMAGE.getWidth() * (long) IMAGE.getHeight();
+        }
+    }
+
+    private static class Key {
+        private static final int                FILE_VERSION = 2;
+        private final        List<Stop>         stops;
+        private final        ScaleDirection     direction;
+        private final        ColorInterpolation interpolation;
+        private final        double             offset;
+        private final        int                width;
+        private final        int                height;
+        private final        double             innerRadius;
+        private final        double             outerRadius;
+        private final        double             scale;
+        private final        int                hashCode;
+
+
+        // Width, height and radii are stored in device pixels of the given scale
+        Key(final List<Stop> STOPS, final ScaleDirection DIRECTION, final double OFFSET, final double WIDTH, final double HEIGHT, final double INNER_RADIUS, final double OUTER_RADIUS, final double SCALE, final ColorInterpolation INTERPOLATION) {
+            scale         = Double.compare(SCALE, 0) > 0 ? SCALE : 1.0;
+            stops         = List.copyOf(STOPS);
+            direction     = DIRECTION;
+            interpolation = null == INTERPOLATION ? ColorInterpolation.SRGB : INTERPOLATION;
+            offset        = OFFSET;
+            width         = WIDTH  <= 0 ? 100 : (int) Math.ceil(WIDTH * scale);
+            height        = HEIGHT <= 0 ? 100 : (int) Math.ceil(HEIGHT * scale);
+            innerRadius   = INNER_RADIUS * scale;
+            outerRadius   = OUTER_RADIUS * scale;
+            hashCode      = Objects.hash(stops, direction, interpolation, offset, width, height, innerRadius, outerRadius, scale);
+        }
+
+
+        boolean isRing() { return Double.compare(outerRadius, 0) > 0; }
+
+        /**
+         * Returns a name for the raster file of this key that only depends on
+         * the values of the key, or null if it can't be calculated.
+         * The name also contains the version of the raster format, which
+         * needs to be increased whenever the rasterization changes.
+         */
+        String getFileName() {
+            try {
+                StringBuilder builder = new StringBuilder().append(FILE_VERSION).append(';').append(ConicalGradient.LUT_SIZE);
+                for (Stop stop : stops) {
+                    builder.append(';').append(stop.getOffset())
+                           .append(',').append(stop.getColor().getRed())
+                           .append(',').append(stop.getColor().getGreen())
+                           .append(',').append(stop.getColor().getBlue())
+                           .append(',').append(stop.getColor().getOpacity());
+                }
+                builder.append(';').append(direction.name()).append(';').append(interpolation.name()).append(';').append(offset)
+                       .append(';').append(width).append(';').append(height)
+                       .append(';').append(innerRadius).append(';').append(outerRadius).append(';').append(scale);
+
+                byte[]        digest = MessageDigest.getInstance("SHA-256").digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+                StringBuilder name   = new StringBuilder();
+                for (byte b : digest) { name.append(String.format("%02x", b)); }
+                return name.toString();
+            } catch (NoSuchAlgorithmException e) {
+                return null;
+            }
+        }
+
+        @Override public boolean equals(final Object OBJECT) {
+            if (this == OBJECT) return true;
+            if (!(OBJECT instanceof Key)) return false;
+            Key key = (Key) OBJECT;
+            return width == key.width && height == key.height && Double.compare(offset, key.offset) == 0 &&
+                   Double.compare(innerRadius, key.innerRadius) == 0 && Double.compare(outerRadius, key.outerRadius) == 0 &&
+                   Double.compare(scale, key.scale) == 0 &&
+                   direction == key.direction && interpolation == key.interpolation && stops.equals(key.stops);
+        }
+
+        @Override public int hashCode() { return hashCode; }
+    }
+}
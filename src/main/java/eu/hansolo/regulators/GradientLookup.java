@@ -21,17 +21,36 @@ import javafx.scene.paint.Stop;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 import java.util.TreeMap;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
 
 
 /**
  * Created by hansolo on 21.12.15.
+ *
+ * The stops are kept sorted in primitive arrays, so a color lookup only
+ * needs a binary search for the segment of the position and doesn't have
+ * to box or iterate anything.
+ * For callers that only need colors as ints, getArgbAt() returns packed
+ * ARGB values from a precalculated table of the given resolution without
+ * creating Color objects at all. The batch versions of getArgbAt() color
+ * whole arrays or streams of positions in one pass and split large arrays
+ * across all cores.
+ * The arrays are immutable and will be replaced as a whole when the stops
+ * or the resolution change (copy on write), so all lookups can be used from
+ * any thread without locking while the stops are changed on another thread.
+ * The colors between the stops will be interpolated in the color space of
+ * the given ColorInterpolation (sRGB by default), the ARGB table and the
+ * inverse lookup work in the same color space.
  */
 public class GradientLookup {
-    private Map<Double, Stop> stops;
+    public  static final int    DEFAULT_RESOLUTION = 1024;
+    public  static final int    PARALLEL_THRESHOLD = 32768;
+    private static final int    CHUNK_SIZE         = 8192;
+    private volatile     Lookup lookup;
 
 
     // ******************** Constructors **************************************
@@ -42,92 +61,268 @@ public class GradientLookup {
         this(Arrays.asList(STOPS));
     }
     public GradientLookup(final List<Stop> STOPS) {
-        stops = new TreeMap<>();
-        for (Stop stop : STOPS) { stops.put(stop.getOffset(), stop); }
-        init();
+        lookup = new Lookup(STOPS, DEFAULT_RESOLUTION, ColorInterpolation.SRGB);
     }
 
 
-    // ******************** Initialization ************************************
-    private void init() {
-        if (stops.isEmpty()) return;
-
-        double minFraction = Collections.min(stops.keySet());
-        double maxFraction = Collections.max(stops.keySet());
+    // ******************** Methods *******************************************
+    public Color getColorAt(final double POSITION_OF_COLOR) { return lookup.getColorAt(POSITION_OF_COLOR); }
 
-        if (Double.compare(minFraction, 0.0) > 0) { stops.put(0.0, new Stop(0.0, stops.get(minFraction).getColor())); }
-        if (Double.compare(maxFraction, 1.0) < 0) { stops.put(1.0, new Stop(1.0, stops.get(maxFraction).getColor())); }
+    /**
+     * Returns the color at the given position as packed non premultiplied
+     * ARGB value, taken from the entry of the table that is nearest to the
+     * position. No object will be created.
+     */
+    public int getArgbAt(final double POSITION_OF_COLOR) {
+        return lookup(lookup.argbTable, POSITION_OF_COLOR);
+    }
+    /**
+     * Returns the packed non premultiplied ARGB value of the table entry with
+     * the given index (0 to resolution - 1), where entry i contains the color
+     * at position i / (resolution - 1).
+     */
+    public int getArgbAt(final int INDEX) {
+        int[] table = lookup.argbTable;
+        return table[INDEX < 0 ? 0 : INDEX >= table.length ? table.length - 1 : INDEX];
     }
 
-
-    // ******************** Methods *******************************************
-    public Color getColorAt(final double POSITION_OF_COLOR) {
-        if (stops.isEmpty()) return Color.BLACK;
-
-        final double POSITION = clamp(0.0, 1.0, POSITION_OF_COLOR);
-        final Color COLOR;
-        if (stops.size() == 1) {
-            final Map<Double, Color> ONE_ENTRY = (Map<Double, Color>) stops.entrySet().iterator().next();
-            COLOR = stops.get(ONE_ENTRY.keySet().iterator().next()).getColor();
+    /**
+     * Writes the packed ARGB values of POSITIONS[i] to OUT[i] for all i from
+     * FROM (inclusive) to TO (exclusive). Ranges with at least
+     * PARALLEL_THRESHOLD positions will be split across the common pool.
+     */
+    public void getArgbAt(final double[] POSITIONS, final int[] OUT, final int FROM, final int TO) {
+        Objects.checkFromToIndex(FROM, TO, POSITIONS.length);
+        Objects.checkFromToIndex(FROM, TO, OUT.length);
+        final int[] TABLE = lookup.argbTable;
+        if (TO - FROM < PARALLEL_THRESHOLD) {
+            lookup(TABLE, POSITIONS, OUT, FROM, TO);
         } else {
-            Stop lowerBound = stops.get(0.0);
-            Stop upperBound = stops.get(1.0);
-            for (Double fraction : stops.keySet()) {
-                if (Double.compare(fraction,POSITION) < 0) {
-                    lowerBound = stops.get(fraction);
-                }
-                if (Double.compare(fraction, POSITION) > 0) {
-                    upperBound = stops.get(fraction);
-                    break;
-                }
-            }
-            COLOR = interpolateColor(lowerBound, upperBound, POSITION);
+            final int CHUNKS = (TO - FROM + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            IntStream.range(0, CHUNKS).parallel().forEach(chunk -> {
+                int from = FROM + chunk * CHUNK_SIZE;
+                lookup(TABLE, POSITIONS, OUT, from, Math.min(TO, from + CHUNK_SIZE));
+            });
         }
-        return COLOR;
     }
-    public double getValueFrom(final Color COLOR) {
-        if (stops.isEmpty()) return 0;
-        double red   = COLOR.getRed();
-        double green = COLOR.getGreen();
-        double blue  = COLOR.getBlue();
-        for (double i = 0 ; Double.compare(i, 1.0) <= 0 ; i += 0.01) {
-            Color color = getColorAt(i);
-            if(Math.abs(red   - color.getRed()) < 0.05 &&
-               Math.abs(green - color.getGreen()) < 0.05 &&
-               Math.abs(blue  - color.getBlue()) < 0.05) {
-                return i;
-            }
+    public int[] getArgbAt(final double[] POSITIONS) {
+        int[] argbs = new int[POSITIONS.length];
+        getArgbAt(POSITIONS, argbs, 0, POSITIONS.length);
+        return argbs;
+    }
+    /**
+     * Returns a stream of the packed ARGB values of the given positions, which
+     * will be processed in parallel if the given stream is parallel.
+     */
+    public IntStream getArgbAt(final DoubleStream POSITIONS) {
+        final int[] TABLE = lookup.argbTable;
+        return POSITIONS.mapToInt(position -> lookup(TABLE, position));
+    }
+
+    public int getResolution() { return lookup.argbTable.length; }
+    /**
+     * Defines the number of entries of the ARGB table, e.g. 256, 1024 (default)
+     * or 4096. Values below 2 will be set to 2.
+     */
+    public synchronized void setResolution(final int RESOLUTION) {
+        int resolution = Math.max(2, RESOLUTION);
+        if (resolution == lookup.argbTable.length) return;
+        lookup = new Lookup(lookup, resolution);
+    }
+
+    public ColorInterpolation getInterpolation() { return lookup.interpolation; }
+    /**
+     * Defines the color space in which the colors between the stops will be
+     * interpolated, e.g. ColorInterpolation.OKLAB for perceptually even mid
+     * tones. Null will be treated as ColorInterpolation.SRGB.
+     */
+    public synchronized void setInterpolation(final ColorInterpolation INTERPOLATION) {
+        ColorInterpolation interpolation = null == INTERPOLATION ? ColorInterpolation.SRGB : INTERPOLATION;
+        if (interpolation == lookup.interpolation) return;
+        lookup = new Lookup(lookup.stops, lookup.argbTable.length, interpolation);
+    }
+
+    private static int lookup(final int[] TABLE, final double POSITION) {
+        return TABLE[(int) (clamp(0.0, 1.0, POSITION) * (TABLE.length - 1) + 0.5)];
+    }
+    private static void lookup(final int[] TABLE, final double[] POSITIONS, final int[] OUT, final int FROM, final int TO) {
+        final double SCALE = TABLE.length - 1;
+        for (int i = FROM ; i < TO ; i++) {
+            double position = POSITIONS[i];
+            OUT[i] = TABLE[(int) ((position < 0 ? 0 : position > 1 ? 1 : position) * SCALE + 0.5)];
         }
-        return 0;
     }
 
-    public List<Stop> getStops() { return new ArrayList<>(stops.values()); }
+    /**
+     * Returns the position whose color is nearest to the given color in the
+     * color space of the interpolation, the opacity will be ignored. Each
+     * segment between two stops is a straight line in that color space, so
+     * the nearest point of a segment is the projection of the color onto that
+     * line, which gives the exact position instead of sampling the gradient.
+     * If several positions are equally near, the smallest one will be returned.
+     */
+    public double getValueFrom(final Color COLOR) { return lookup.getValueFrom(COLOR); }
+
+    public List<Stop> getStops() { return new ArrayList<>(lookup.stops); }
     public void setStops(final Stop... STOPS) { setStops(Arrays.asList(STOPS)); }
-    public void setStops(final List<Stop> STOPS) {
-        stops.clear();
-        for (Stop stop : STOPS) { stops.put(stop.getOffset(), stop); }
-        init();
-    }
+    public synchronized void setStops(final List<Stop> STOPS) { lookup = new Lookup(STOPS, lookup.argbTable.length, lookup.interpolation); }
 
-    private static final <T extends Number> T clamp(final T MIN, final T MAX, final T VALUE) {
-        if (VALUE.doubleValue() < MIN.doubleValue()) return MIN;
-        if (VALUE.doubleValue() > MAX.doubleValue()) return MAX;
+    private static double clamp(final double MIN, final double MAX, final double VALUE) {
+        if (VALUE < MIN) return MIN;
+        if (VALUE > MAX) return MAX;
         return VALUE;
     }
 
-    private Color interpolateColor(final Stop LOWER_BOUND, final Stop UPPER_BOUND, final double POSITION) {
-        final double POS = (POSITION - LOWER_BOUND.getOffset()) / (UPPER_BOUND.getOffset() - LOWER_BOUND.getOffset());
+    private static double distanceSquared(final double DELTA_0, final double DELTA_1, final double DELTA_2) {
+        return DELTA_0 * DELTA_0 + DELTA_1 * DELTA_1 + DELTA_2 * DELTA_2;
+    }
+
+
+    // ******************** Inner Classes *************************************
+    /**
+     * Immutable sorted stops and ARGB table, which will never be modified
+     * after construction and can therefore be shared between threads.
+     * The components of the stop colors are stored in the color space of
+     * the interpolation (red, green and blue for sRGB).
+     */
+    private static final class Lookup {
+        private final ColorInterpolation interpolation;
+        private final List<Stop>         stops;
+        private final double[]           offsets;
+        private final float[]            components0;
+        private final float[]            components1;
+        private final float[]            components2;
+        private final float[]            opacities;
+        private final Color[]            colors;
+        private final int[]              argbTable;
+
 
-        final double DELTA_RED     = (UPPER_BOUND.getColor().getRed()     - LOWER_BOUND.getColor().getRed())     * POS;
-        final double DELTA_GREEN   = (UPPER_BOUND.getColor().getGreen()   - LOWER_BOUND.getColor().getGreen())   * POS;
-        final double DELTA_BLUE    = (UPPER_BOUND.getColor().getBlue()    - LOWER_BOUND.getColor().getBlue())    * POS;
-        final double DELTA_OPACITY = (UPPER_BOUND.getColor().getOpacity() - LOWER_BOUND.getColor().getOpacity()) * POS;
+        Lookup(final List<Stop> STOPS, final int RESOLUTION, final ColorInterpolation INTERPOLATION) {
+            // Stops with the same offset replace each other, the last one wins
+            TreeMap<Double, Stop> sortedStops = new TreeMap<>();
+            for (Stop stop : STOPS) { sortedStops.put(stop.getOffset(), stop); }
 
-        double red     = clamp(0.0, 1.0, (LOWER_BOUND.getColor().getRed()     + DELTA_RED));
-        double green   = clamp(0.0, 1.0, (LOWER_BOUND.getColor().getGreen()   + DELTA_GREEN));
-        double blue    = clamp(0.0, 1.0, (LOWER_BOUND.getColor().getBlue()    + DELTA_BLUE));
-        double opacity = clamp(0.0, 1.0, (LOWER_BOUND.getColor().getOpacity() + DELTA_OPACITY));
+            if (!sortedStops.isEmpty()) {
+                double minFraction = sortedStops.firstKey();
+                double maxFraction = sortedStops.lastKey();
+                if (Double.compare(minFraction, 0.0) > 0) { sortedStops.put(0.0, new Stop(0.0, sortedStops.get(minFraction).getColor())); }
+                if (Double.compare(maxFraction, 1.0) < 0) { sortedStops.put(1.0, new Stop(1.0, sortedStops.get(maxFraction).getColor())); }
+            }
+
+            int size      = sortedStops.size();
+            interpolation = INTERPOLATION;
+            stops         = List.copyOf(sortedStops.values());
+            offsets       = new double[size];
+            components0   = new float[size];
+            components1   = new float[size];
+            components2   = new float[size];
+            opacities     = new float[size];
+            colors        = new Color[size];
+            for (int i = 0 ; i < size ; i++) {
+                Stop     stop       = stops.get(i);
+                Color    color      = stop.getColor();
+                double[] components = interpolation.toComponents(color);
+                offsets[i]     = stop.getOffset();
+                components0[i] = (float) components[0];
+                components1[i] = (float) components[1];
+                components2[i] = (float) components[2];
+                opacities[i]   = (float) color.getOpacity();
+                colors[i]      = color;
+            }
+            argbTable = createArgbTable(RESOLUTION);
+        }
+        Lookup(final Lookup LOOKUP, final int RESOLUTION) {
+            interpolation = LOOKUP.interpolation;
+            stops         = LOOKUP.stops;
+            offsets       = LOOKUP.offsets;
+            components0   = LOOKUP.components0;
+            components1   = LOOKUP.components1;
+            components2   = LOOKUP.components2;
+            opacities     = LOOKUP.opacities;
+            colors        = LOOKUP.colors;
+            argbTable     = createArgbTable(RESOLUTION);
+        }
+
+
+        private int[] createArgbTable(final int RESOLUTION) {
+            final int   LAST  = RESOLUTION - 1;
+            int[]       table = new int[RESOLUTION];
+            if (offsets.length == 0) {
+                Arrays.fill(table, 0xFF000000);
+                return table;
+            }
+
+            // Positions are increasing, so the segment only has to move forward
+            int upper = 0;
+            for (int i = 0 ; i < RESOLUTION ; i++) {
+                double position = (double) i / LAST;
+                while (upper < offsets.length - 1 && offsets[upper] < position) { upper++; }
+                if (offsets[upper] <= position || upper == 0) {
+                    table[i] = interpolation.toArgb(components0[upper], components1[upper], components2[upper], opacities[upper]);
+                } else {
+                    int    lower    = upper - 1;
+                    double fraction = (position - offsets[lower]) / (offsets[upper] - offsets[lower]);
+                    table[i] = interpolation.toArgb(components0[lower] + (components0[upper] - components0[lower]) * fraction,
+                                                    components1[lower] + (components1[upper] - components1[lower]) * fraction,
+                                                    components2[lower] + (components2[upper] - components2[lower]) * fraction,
+                                                    opacities[lower]   + (opacities[upper]   - opacities[lower])   * fraction);
+                }
+            }
+            return table;
+        }
 
-        return Color.color(red, green, blue, opacity);
+        Color getColorAt(final double POSITION_OF_COLOR) {
+            if (offsets.length == 0) return Color.BLACK;
+
+            final double POSITION = clamp(0.0, 1.0, POSITION_OF_COLOR);
+            int index = Arrays.binarySearch(offsets, POSITION);
+            if (index >= 0) return colors[index];
+
+            int upper = -index - 1;
+            if (upper == 0)              return colors[0];
+            if (upper == offsets.length) return colors[offsets.length - 1];
+            return interpolateColor(upper - 1, upper, POSITION);
+        }
+
+        double getValueFrom(final Color COLOR) {
+            if (offsets.length == 0) return 0;
+            // The components of sRGB are the color channels, which saves the array per call
+            final boolean  SRGB       = ColorInterpolation.SRGB == interpolation;
+            final double[] COMPONENTS = SRGB ? null : interpolation.toComponents(COLOR);
+            final double   C0         = SRGB ? COLOR.getRed()   : COMPONENTS[0];
+            final double   C1         = SRGB ? COLOR.getGreen() : COMPONENTS[1];
+            final double   C2         = SRGB ? COLOR.getBlue()  : COMPONENTS[2];
+
+            double value        = offsets[0];
+            double bestDistance = distanceSquared(C0 - components0[0], C1 - components1[0], C2 - components2[0]);
+            for (int i = 0 ; i < offsets.length - 1 ; i++) {
+                double delta0   = components0[i + 1] - components0[i];
+                double delta1   = components1[i + 1] - components1[i];
+                double delta2   = components2[i + 1] - components2[i];
+                double length   = distanceSquared(delta0, delta1, delta2);
+                double fraction = 0;
+                if (length > 0) {
+                    fraction = ((C0 - components0[i]) * delta0 + (C1 - components1[i]) * delta1 + (C2 - components2[i]) * delta2) / length;
+                    fraction = clamp(0.0, 1.0, fraction);
+                }
+                double distance = distanceSquared(C0 - (components0[i] + delta0 * fraction),
+                                                  C1 - (components1[i] + delta1 * fraction),
+                                                  C2 - (components2[i] + delta2 * fraction));
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    value        = offsets[i] + (offsets[i + 1] - offsets[i]) * fraction;
+                }
+            }
+            return value;
+        }
+
+        private Color interpolateColor(final int LOWER, final int UPPER, final double POSITION) {
+            final double POS = (POSITION - offsets[LOWER]) / (offsets[UPPER] - offsets[LOWER]);
+
+            return interpolation.toColor(components0[LOWER] + (components0[UPPER] - components0[LOWER]) * POS,
+                                         components1[LOWER] + (components1[UPPER] - components1[LOWER]) * POS,
+                                         components2[LOWER] + (components2[UPPER] - components2[LOWER]) * POS,
+                                         opacities[LOWER]   + (opacities[UPPER]   - opacities[LOWER])   * POS);
+        }
     }
 }
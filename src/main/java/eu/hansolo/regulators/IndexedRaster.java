@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.regulators;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.util.Arrays;
+
+
+/**
+ * Compact copy of a gradient raster that stores a palette index per pixel
+ * (one byte for up to 256 colors, two bytes for up to 65536 colors) and the
+ * palette of the premultiplied ARGB colors. A gradient raster only contains
+ * a few thousand distinct colors, so this needs 2 - 4 times less memory than
+ * the raster itself. The pixels will be expanded to ARGB when the raster is
+ * converted to an image.
+ */
+class IndexedRaster {
+    private static final int     MAX_BYTE_COLORS  = 256;
+    private static final int     MAX_SHORT_COLORS = 65536;
+    final                int     width;
+    final                int     height;
+    private final        int[]   palette;
+    private final        byte[]  byteIndices;
+    private final        short[] shortIndices;
+
+
+    // ******************** Constructors **************************************
+    private IndexedRaster(final int WIDTH, final int HEIGHT, final int[] PALETTE, final byte[] BYTE_INDICES, final short[] SHORT_INDICES) {
+        width        = WIDTH;
+        height       = HEIGHT;
+        palette      = PALETTE;
+        byteIndices  = BYTE_INDICES;
+        shortIndices = SHORT_INDICES;
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Returns the indexed version of the first WIDTH * HEIGHT premultiplied
+     * ARGB values of the given pixels or null if they contain more than
+     * 65536 distinct colors.
+     */
+    static IndexedRaster of(final int WIDTH, final int HEIGHT, final int[] PIXELS) {
+        final int LENGTH       = WIDTH * HEIGHT;
+        // A small raster can't contain more colors than pixels, the table is at most half full
+        final int MAX_COLORS   = Math.max(1, Math.min(LENGTH, MAX_SHORT_COLORS));
+        final int TABLE_SIZE   = Integer.highestOneBit(2 * MAX_COLORS - 1) << 1;
+        final int TABLE_MASK   = TABLE_SIZE - 1;
+        final int TABLE_SHIFT  = Integer.numberOfLeadingZeros(TABLE_SIZE) + 1;
+        int[]     tableColors  = new int[TABLE_SIZE];
+        int[]     tableIndices = new int[TABLE_SIZE];
+        int[]     palette      = new int[MAX_COLORS];
+        short[]   indices      = new short[LENGTH];
+        int       colors       = 0;
+        Arrays.fill(tableIndices, -1);
+
+        // Open addressing hash table from color to palette index, neighbouring pixels mostly share the last color
+        int lastColor = 0;
+        int lastIndex = -1;
+        for (int i = 0 ; i < LENGTH ; i++) {
+            int color = PIXELS[i];
+            if (color != lastColor || lastIndex < 0) {
+                int slot = (color * 0x9E3779B9) >>> TABLE_SHIFT & TABLE_MASK;
+                while (tableIndices[slot] >= 0 && tableColors[slot] != color) { slot = (slot + 1) & TABLE_MASK; }
+                if (tableIndices[slot] < 0) {
+                    if (colors == MAX_SHORT_COLORS) return null;
+                    tableColors[slot]  = color;
+                    tableIndices[slot] = colors;
+                    palette[colors++]  = color;
+                }
+                lastColor = color;
+                lastIndex = tableIndices[slot];
+            }
+            indices[i] = (short) lastIndex;
+        }
+
+        if (colors > MAX_BYTE_COLORS) { return new IndexedRaster(WIDTH, HEIGHT, Arrays.copyOf(palette, colors), null, indices); }
+
+        byte[] byteIndices = new byte[LENGTH];
+        for (int i = 0 ; i < LENGTH ; i++) { byteIndices[i] = (byte) indices[i]; }
+        return new IndexedRaster(WIDTH, HEIGHT, Arrays.copyOf(palette, colors), byteIndices, null);
+    }
+
+    /**
+     * Writes the premultiplied ARGB values of all pixels to the given buffer.
+     */
+    void expand(final int[] BUFFER) {
+        final int[] PALETTE = palette;
+        if (null == shortIndices) {
+            for (int i = 0 ; i < byteIndices.length ; i++) { BUFFER[i] = PALETTE[byteIndices[i] & 0xFF]; }
+        } else {
+            for (int i = 0 ; i < shortIndices.length ; i++) { BUFFER[i] = PALETTE[shortIndices[i] & 0xFFFF]; }
+        }
+    }
+
+    WritableImage toImage() {
+        int[]         buffer = new int[width * height];
+        WritableImage image  = new WritableImage(width, height);
+        expand(buffer);
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), buffer, 0, width);
+        return image;
+    }
+
+    int getColorCount() { return palette.length; }
+
+    long getBytes() { return 4L * palette.length + (null == shortIndices ? byteIndices.length : 2L * shortIndices.length); }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.regulators;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Chain of rasters where each level has half the width and height of the
+ * previous one. Only the first level has to be rasterized, all other levels
+ * are derived from it by averaging blocks of 2 x 2 premultiplied pixels
+ * (3 pixels wide or high at the edges of levels with an odd size).
+ * The images of the levels will be created when they are requested.
+ */
+class MipMapChain {
+    private static final int                 MIN_SIZE = 8;
+    final                int                 width;
+    final                int                 height;
+    private final        List<int[]>         levels;
+    private final        List<WritableImage> images;
+
+
+    // ******************** Constructors **************************************
+    /**
+     * Creates the chain from the given premultiplied ARGB pixels of the
+     * first level, the array will be used as is.
+     */
+    MipMapChain(final int WIDTH, final int HEIGHT, final int[] PIXELS) {
+        width  = WIDTH;
+        height = HEIGHT;
+        levels = new ArrayList<>();
+        images = new ArrayList<>();
+
+        int[] pixels      = PIXELS;
+        int   levelWidth  = WIDTH;
+        int   levelHeight = HEIGHT;
+        levels.add(pixels);
+        images.add(null);
+        while (levelWidth / 2 >= MIN_SIZE && levelHeight / 2 >= MIN_SIZE) {
+            pixels      = downsample(pixels, levelWidth, levelHeight);
+            levelWidth  /= 2;
+            levelHeight /= 2;
+            levels.add(pixels);
+            images.add(null);
+        }
+    }
+
+
+    // ******************** Methods *******************************************
+    int getLevelCount() { return levels.size(); }
+
+    /**
+     * Returns the image of the smallest level that is at least as large as
+     * the given size, or of the first level if the size is larger than that.
+     */
+    Image getImage(final int WIDTH, final int HEIGHT) {
+        int level = 0;
+        while (level + 1 < levels.size() && (width >> (level + 1)) >= WIDTH && (height >> (level + 1)) >= HEIGHT) { level++; }
+
+        WritableImage image = images.get(level);
+        if (null == image) {
+            int levelWidth  = width >> level;
+            int levelHeight = height >> level;
+            image = new WritableImage(levelWidth, levelHeight);
+            image.getPixelWriter().setPixels(0, 0, levelWidth, levelHeight, PixelFormat.getIntArgbPreInstance(), levels.get(level), 0, levelWidth);
+            images.set(level, image);
+        }
+        return image;
+    }
+
+    // Box filter, the pixels are premultiplied so the channels can be averaged directly
+    private static int[] downsample(final int[] PIXELS, final int WIDTH, final int HEIGHT) {
+        int   targetWidth  = WIDTH / 2;
+        int   targetHeight = HEIGHT / 2;
+        int[] target       = new int[targetWidth * targetHeight];
+        for (int y = 0 ; y < targetHeight ; y++) {
+            int row0 = (2 * y) * WIDTH;
+            int row1 = row0 + WIDTH;
+            for (int x = 0 ; x < targetWidth ; x++) {
+                int p0 = PIXELS[row0 + 2 * x];
+                int p1 = PIXELS[row0 + 2 * x + 1];
+                int p2 = PIXELS[row1 + 2 * x];
+                int p3 = PIXELS[row1 + 2 * x + 1];
+                int a  = ((p0 >>> 24)        + (p1 >>> 24)        + (p2 >>> 24)        + (p3 >>> 24)        + 2) >> 2;
+                int r  = ((p0 >> 16 & 0xFF)  + (p1 >> 16 & 0xFF)  + (p2 >> 16 & 0xFF)  + (p3 >> 16 & 0xFF)  + 2) >> 2;
+                int g  = ((p0 >> 8 & 0xFF)   + (p1 >> 8 & 0xFF)   + (p2 >> 8 & 0xFF)   + (p3 >> 8 & 0xFF)   + 2) >> 2;
+                int b  = ((p0 & 0xFF)        + (p1 & 0xFF)        + (p2 & 0xFF)        + (p3 & 0xFF)        + 2) >> 2;
+                target[y * targetWidth + x] = a << 24 | r << 16 | g << 8 | b;
+            }
+        }
+
+        // An odd last column or row would be dropped, so the blocks at the right and bottom edge also average it
+        if (WIDTH % 2 != 0) {
+            for (int y = 0 ; y < targetHeight ; y++) {
+                target[y * targetWidth + targetWidth - 1] = average(PIXELS, WIDTH, WIDTH - 3, WIDTH, 2 * y, y == targetHeight - 1 ? HEIGHT : 2 * y + 2);
+            }
+        }
+        if (HEIGHT % 2 != 0) {
+            for (int x = 0 ; x < targetWidth ; x++) {
+                target[(targetHeight - 1) * targetWidth + x] = average(PIXELS, WIDTH, 2 * x, x == targetWidth - 1 ? WIDTH : 2 * x + 2, HEIGHT - 3, HEIGHT);
+            }
+        }
+        return target;
+    }
+
+    // Averages the pixels in the columns FROM_X to TO_X (exclusive) of the rows FROM_Y to TO_Y (exclusive)
+    private static int average(final int[] PIXELS, final int WIDTH, final int FROM_X, final int TO_X, final int FROM_Y, final int TO_Y) {
+        int a = 0;
+        int r = 0;
+        int g = 0;
+        int b = 0;
+        for (int y = FROM_Y ; y < TO_Y ; y++) {
+            for (int x = FROM_X ; x < TO_X ; x++) {
+                int pixel = PIXELS[y * WIDTH + x];
+                a += pixel >>> 24;
+                r += pixel >> 16 & 0xFF;
+                g += pixel >> 8 & 0xFF;
+                b += pixel & 0xFF;
+            }
+        }
+        int count = (TO_X - FROM_X) * (TO_Y - FROM_Y);
+        int half  = count / 2;
+        return (a + half) / count << 24 | (r + half) / count << 16 | (g + half) / count << 8 | (b + half) / count;
+    }
+}
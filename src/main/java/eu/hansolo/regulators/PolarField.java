@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.regulators;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+
+/**
+ * Angle field of a raster with a given size and center that will be shared
+ * by all conical gradients of that size. Each pixel stores the index of its
+ * angle in the lookup table of the ConicalGradient, so coloring a raster
+ * becomes a pure table mapping without any trigonometry.
+ * The distance to the center is not stored because calculating it is cheaper
+ * than loading it from memory.
+ */
+class PolarField {
+    private static final long                   MAX_BYTES           = 16 * 1024 * 1024;
+    private static final int                    MIN_PARALLEL_PIXELS = 256 * 256;
+    private static final Map<Key, PolarField>   CACHE               = new LinkedHashMap<>(16, 0.75f, true);
+    private static final double[]               EDGE_X              = new double[ConicalGradient.LUT_SIZE];
+    private static final double[]               EDGE_Y              = new double[ConicalGradient.LUT_SIZE];
+    private static       long                   usedBytes           = 0;
+    final                int                    width;
+    final                int                    height;
+    final                double                 centerX;
+    final                double                 centerY;
+    final                short[]                angleIndices;
+
+
+    static {
+        // Unit vectors of the lower edges of all lookup table entries
+        for (int index = 0 ; index < ConicalGradient.LUT_SIZE ; index++) {
+            double angle = Math.toRadians(index * 360.0 / ConicalGradient.LUT_SIZE);
+            EDGE_X[index] = Math.sin(angle);
+            EDGE_Y[index] = -Math.cos(angle);
+        }
+    }
+
+
+    // ******************** Constructors **************************************
+    private PolarField(final int WIDTH, final int HEIGHT, final double CENTER_X, final double CENTER_Y) {
+        width        = WIDTH;
+        height       = HEIGHT;
+        centerX      = CENTER_X;
+        centerY      = CENTER_Y;
+        angleIndices = new short[WIDTH * HEIGHT];
+
+        IntStream rows = IntStream.range(0, HEIGHT);
+        if (WIDTH * HEIGHT >= MIN_PARALLEL_PIXELS) { rows = rows.parallel(); }
+        rows.forEach(y -> {
+            int    row = y * WIDTH;
+            double dy  = y - CENTER_Y;
+            for (int x = 0 ; x < WIDTH ; x++) {
+                angleIndices[row + x] = (short) ConicalGradient.lutIndex(angle(x - CENTER_X, dy));
+            }
+        });
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Returns the shared field for the given size and center and calculates
+     * it if it is not cached yet.
+     */
+    static PolarField get(final int WIDTH, final int HEIGHT, final double CENTER_X, final double CENTER_Y) {
+        final Key KEY = new Key(WIDTH, HEIGHT, CENTER_X, CENTER_Y);
+        synchronized (CACHE) {
+            PolarField field = CACHE.get(KEY);
+            if (null != field) return field;
+        }
+        PolarField field = new PolarField(WIDTH, HEIGHT, CENTER_X, CENTER_Y);
+        synchronized (CACHE) {
+            PolarField cachedField = CACHE.get(KEY);
+            if (null != cachedField) return cachedField;
+            CACHE.put(KEY, field);
+            usedBytes += field.getBytes();
+            Iterator<PolarField> iterator = CACHE.values().iterator();
+            while (usedBytes > MAX_BYTES && CACHE.size() > 1 && iterator.hasNext()) {
+                usedBytes -= iterator.next().getBytes();
+                iterator.remove();
+            }
+        }
+        return field;
+    }
+
+    /**
+     * Returns the shared field for the given size and center or null if it
+     * is not cached.
+     */
+    static PolarField getIfPresent(final int WIDTH, final int HEIGHT, final double CENTER_X, final double CENTER_Y) {
+        synchronized (CACHE) { return CACHE.get(new Key(WIDTH, HEIGHT, CENTER_X, CENTER_Y)); }
+    }
+
+    /**
+     * Returns the angle in degrees (0 - 360) of the given offset to the center,
+     * where 0 deg is at 12 o'clock and the angle increases clockwise.
+     */
+    static double angle(final double DX, final double DY) {
+        double distance = Math.sqrt((DX * DX) + (DY * DY));
+        distance = Double.compare(distance, 0) == 0 ? 1 : distance;
+        return adjustAngle(DX, DY, Math.abs(Math.toDegrees(Math.acos(DX / distance))));
+    }
+
+    /**
+     * Returns the angle in degrees of the given offset to the center, which
+     * has to lie in the lookup table entry with the given index. Instead of
+     * acos the angle to the lower edge of the entry will be calculated from
+     * the cross product, for angles below 0.1 deg the error of the series
+     * x + x^3 / 6 for asin is below 1e-12 deg.
+     */
+    static double angle(final int INDEX, final double DX, final double DY) {
+        double distance = Math.sqrt((DX * DX) + (DY * DY));
+        distance = Double.compare(distance, 0) == 0 ? 1 : distance;
+        double sine = (DY * EDGE_X[INDEX] - DX * EDGE_Y[INDEX]) / distance;
+        return INDEX * 360.0 / ConicalGradient.LUT_SIZE + Math.toDegrees(sine + sine * sine * sine / 6.0);
+    }
+
+    private static double adjustAngle(final double DX, final double DY, double angle) {
+        if (Double.compare(DX, 0) >= 0 && Double.compare(DY, 0) <= 0) {
+            angle = 90.0 - angle;   // Upper Right Quadrant
+        } else if (Double.compare(DX, 0) >= 0 && Double.compare(DY, 0) >= 0) {
+            angle += 90.0;          // Lower Right Quadrant
+        } else if (Double.compare(DX, 0) <= 0 && Double.compare(DY, 0) >= 0) {
+            angle += 90.0;          // Lower Left Quadrant
+        } else if (Double.compare(DX, 0) <= 0 && Double.compare(DY, 0) <= 0) {
+            angle = 450.0 - angle;  // Upper Left Qudrant
+        }
+        return angle;
+    }
+
+    private long getBytes() { return 2L * angleIndices.length; }
+
+
+    // ******************** Inner Classes *************************************
+    private static class Key {
+        private final int    width;
+        private final int    height;
+        private final double centerX;
+        private final double centerY;
+
+
+        Key(final int WIDTH, final int HEIGHT, final double CENTER_X, final double CENTER_Y) {
+            width   = WIDTH;
+            height  = HEIGHT;
+            centerX = CENTER_X;
+            centerY = CENTER_Y;
+        }
+
+
+        @Override public boolean equals(final Object OBJECT) {
+            if (this == OBJECT) return true;
+            if (!(OBJECT instanceof Key)) return false;
+            Key key = (Key) OBJECT;
+            return width == key.width && height == key.height &&
+                   Double.compare(centerX, key.centerX) == 0 && Double.compare(centerY, key.centerY) == 0;
+        }
+
+        @Override public int hashCode() { return Objects.hash(width, height, centerX, centerY); }
+    }
+}
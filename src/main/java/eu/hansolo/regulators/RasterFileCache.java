@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.regulators;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Stores gradient rasters as files in a directory so they survive a restart.
+ * Each file contains a small header followed by the premultiplied ARGB
+ * pixels in native byte order, which allows to memory map the file and use
+ * the mapped pixels directly as the PixelBuffer of an image.
+ * The last modified time of a file is updated whenever it is loaded, so
+ * trim() can delete the least recently used files first.
+ * All errors will be ignored, a broken or missing file is a cache miss.
+ */
+class RasterFileCache {
+    private static final int    MAGIC       = 0x52474331; // RGC1
+    private static final int    VERSION     = 1;
+    private static final int    HEADER_SIZE = 16;
+    private static final String SUFFIX      = ".raster";
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Returns an image backed by the memory mapped pixels of the file with
+     * the given name or null if there is no valid file for the given size.
+     */
+    static Image load(final Path DIRECTORY, final String NAME, final int WIDTH, final int HEIGHT) {
+        Path file = DIRECTORY.resolve(NAME + SUFFIX);
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != HEADER_SIZE + 4L * WIDTH * HEIGHT) return null;
+
+            // The mapping stays valid after the channel has been closed
+            MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.nativeOrder());
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION || mapped.getInt(8) != WIDTH || mapped.getInt(12) != HEIGHT) return null;
+
+            IntBuffer pixels = mapped.position(HEADER_SIZE).slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new WritableImage(new PixelBuffer<>(WIDTH, HEIGHT, pixels, PixelFormat.getIntArgbPreInstance()));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the first WIDTH * HEIGHT premultiplied ARGB values of the given
+     * pixels to the file with the given name. The file will be written to a
+     * temporary file first and then moved, so readers never see partial files.
+     */
+    static void store(final Path DIRECTORY, final String NAME, final int WIDTH, final int HEIGHT, final int[] PIXELS) {
+        Path temp = null;
+        try {
+            Files.createDirectories(DIRECTORY);
+            temp = Files.createTempFile(DIRECTORY, NAME, ".tmp");
+
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * WIDTH * HEIGHT).order(ByteOrder.nativeOrder());
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(WIDTH).putInt(HEIGHT);
+            buffer.asIntBuffer().put(PIXELS, 0, WIDTH * HEIGHT);
+            buffer.rewind();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) { channel.write(buffer); }
+            }
+            Files.move(temp, DIRECTORY.resolve(NAME + SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            if (null != temp) { try { Files.deleteIfExists(temp); } catch (IOException ignored) { } }
+        }
+    }
+
+    /**
+     * Deletes the least recently used raster files until all raster files in
+     * the given directory need at most MAX_BYTES bytes. Files that are still
+     * mapped stay valid on most platforms or can't be deleted, which is fine.
+     */
+    static void trim(final Path DIRECTORY, final long MAX_BYTES) {
+        Map<Path, BasicFileAttributes> files      = new HashMap<>();
+        long                           totalBytes = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DIRECTORY, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) continue;
+                files.put(file, attributes);
+                totalBytes += attributes.size();
+            }
+        } catch (IOException | RuntimeException e) {
+            return;
+        }
+        if (totalBytes <= MAX_BYTES) return;
+
+        List<Path> leastRecentlyUsed = new ArrayList<>(files.keySet());
+        leastRecentlyUsed.sort(Comparator.comparing(file -> files.get(file).lastModifiedTime()));
+        for (Path file : leastRecentlyUsed) {
+            if (totalBytes <= MAX_BYTES) break;
+            try {
+                Files.deleteIfExists(file);
+                totalBytes -= files.get(file).size();
+            } catch (IOException | RuntimeException ignored) { }
+        }
+    }
+}
@@ -68,6 +68,15 @@ public class Regulator extends Region implements RegulatorControl {
     private static final double         MAXIMUM_HEIGHT   = 1024;
     private static final double         BAR_START_ANGLE  = -130;
     private static final double         ANGLE_RANGE      = 280;
+    private static final int            DIRTY_SIZE       = 1;
+    private static final int            DIRTY_COLOR      = 1 << 1;
+    private static final int            DIRTY_INDICATOR  = 1 << 2;
+    private static final int            DIRTY_SYMBOL     = 1 << 3;
+    private static final int            DIRTY_ICON       = 1 << 4;
+    private static final int            DIRTY_TEXT       = 1 << 5;
+    private static final int            DIRTY_BAR        = 1 << 6;
+    private static final int            DIRTY_VALUE      = 1 << 7;
+    private static final int            DIRTY_ALL        = (1 << 8) - 1;
     private final        RegulatorEvent TARGET_SET_EVENT = new RegulatorEvent(RegulatorEvent.TARGET_SET);
     private double                      size;
     private Arc                         barArc;
@@ -101,6 +110,7 @@ public class Regulator extends Region implements RegulatorControl {
     private BooleanProperty             selected;
     private String                      formatString;
     private double                      angleStep;
+    private int                         dirty;
 
 
     // ******************** Constructors **************************************
@@ -111,6 +121,7 @@ public class Regulator extends Region implements RegulatorControl {
             @Override public void set(final double VALUE) {
                 super.set(clamp(-Double.MAX_VALUE, maxValue.get(), VALUE));
                 angleStep = ANGLE_RANGE / (maxValue.get() - minValue.get());
+                markDirty(DIRTY_VALUE);
             }
             @Override public Object getBean() { return Regulator.this; }
             @Override public String getName() { return "minValue"; }
@@ -119,12 +130,16 @@ public class Regulator extends Region implements RegulatorControl {
             @Override public void set(final double VALUE) {
                 super.set(clamp(minValue.get(), Double.MAX_VALUE, VALUE));
                 angleStep = ANGLE_RANGE / (maxValue.get() - minValue.get());
+                markDirty(DIRTY_VALUE);
             }
             @Override public Object getBean() { return Regulator.this; }
             @Override public String getName() { return "maxValue"; }
         };
         targetValue = new DoublePropertyBase(0) {
-            @Override public void set(final double VALUE) { super.set(clamp(minValue.get(), maxValue.get(), VALUE)); }
+            @Override public void set(final double VALUE) {
+                super.set(clamp(minValue.get(), maxValue.get(), VALUE));
+                markDirty(DIRTY_VALUE);
+            }
             @Override public Object getBean() { return Regulator.this; }
             @Override public String getName() { return "targetValue"; }
         };
@@ -132,7 +147,7 @@ public class Regulator extends Region implements RegulatorControl {
             @Override public void set(final int VALUE) {
                 super.set(clamp(0, 2, VALUE));
                 formatString = new StringBuilder("%.").append(Integer.toString(decimals.get())).append("f").append(getUnit()).toString();
-                redraw();
+                markDirty(DIRTY_VALUE);
             }
             @Override public Object getBean() { return Regulator.this; }
             @Override public String getName() { return "decimals"; }
@@ -141,7 +156,7 @@ public class Regulator extends Region implements RegulatorControl {
             @Override public void set(final String VALUE) {
                 super.set(VALUE.equals("%") ? "%%" : VALUE);
                 formatString = new StringBuilder("%.").append(Integer.toString(decimals.get())).append("f").append(get()).toString();
-                redraw();
+                markDirty(DIRTY_VALUE);
             }
             @Override public Object getBean() { return Regulator.this; }
             @Override public String getName() { return "unit"; }
@@ -149,7 +164,7 @@ public class Regulator extends Region implements RegulatorControl {
         symbolColor  = new ObjectPropertyBase<Color>(Color.TRANSPARENT) {
             @Override protected void invalidated() {
                 set(null == get() ? Color.WHITE : get());
-                redraw();
+                markDirty(DIRTY_SYMBOL);
             }
             @Override public Object getBean() { return Regulator.this; }
             @Override public String getName() { return "symbolColor"; }
@@ -157,7 +172,7 @@ public class Regulator extends Region implements RegulatorControl {
         iconColor    = new ObjectPropertyBase<Color>(Color.TRANSPARENT) {
             @Override protected void invalidated() {
                 set(null == get() ? Color.WHITE : get());
-                redraw();
+                markDirty(DIRTY_ICON);
             }
             @Override public Object getBean() { return Regulator.this; }
             @Override public String getName() { return "iconColor"; }
@@ -165,7 +180,7 @@ public class Regulator extends Region implements RegulatorControl {
         textColor    = new ObjectPropertyBase<Color>(Color.WHITE) {
             @Override protected void invalidated() {
                 set(null == get() ? Color.WHITE : get());
-                redraw();
+                markDirty(DIRTY_TEXT);
             }
             @Override public Object getBean() { return Regulator.this; }
             @Override public String getName() { return "textColor"; }
@@ -173,7 +188,7 @@ public class Regulator extends Region implements RegulatorControl {
         barColor     = new ObjectPropertyBase<Color>(Color.CYAN) {
             @Override protected void invalidated() {
                 super.set(null == get() ? Color.CYAN : get());
-                redraw();
+                markDirty(DIRTY_BAR);
             }
             @Override public Object getBean() { return Regulator.this; }
             @Override public String getName() { return "barColor"; }
@@ -181,33 +196,24 @@ public class Regulator extends Region implements RegulatorControl {
         color        = new ObjectPropertyBase<Color>(DEFAULT_COLOR) {
             @Override protected void invalidated() {
                 super.set(null == get() ? DEFAULT_COLOR : get());
-                redraw();
+                markDirty(DIRTY_COLOR | DIRTY_INDICATOR);
             }
             @Override public Object getBean() { return Regulator.this; }
             @Override public String getName() { return "color"; }
         };
         indicatorColor = new ObjectPropertyBase<Color>(Color.WHITE) {
-            @Override protected void invalidated() { indicatorGlow.setColor(get()); }
+            @Override protected void invalidated() { markDirty(DIRTY_INDICATOR); }
             @Override public Object getBean() { return Regulator.this; }
             @Override public String getName() { return "indicatorColor"; }
         };
         selected       = new BooleanPropertyBase(false) {
-            @Override protected void invalidated() {
-                if (get()) {
-                    indicator.setFill(getIndicatorColor());
-                    indicator.setStroke(getIndicatorColor().darker().darker());
-                    indicator.setEffect(indicatorGlow);
-                } else {
-                    indicator.setFill(getColor().darker());
-                    indicator.setStroke(getColor().darker().darker());
-                    indicator.setEffect(null);
-                }
-            }
+            @Override protected void invalidated() { markDirty(DIRTY_INDICATOR); }
             @Override public Object getBean() { return Regulator.this; }
             @Override public String getName() { return "selected"; }
         };
         formatString = new StringBuilder("%.").append(Integer.toString(decimals.get())).append("f").append(unit.get()).toString();
         angleStep    = ANGLE_RANGE / (maxValue.get() - minValue.get());
+        dirty        = DIRTY_ALL;
         init();
         initGraphics();
         registerListeners();
@@ -292,10 +298,9 @@ public class Regulator extends Region implements RegulatorControl {
     }
 
     private void registerListeners() {
-        widthProperty().addListener(o -> resize());
-        heightProperty().addListener(o -> resize());
+        widthProperty().addListener(o -> markDirty(DIRTY_SIZE));
+        heightProperty().addListener(o -> markDirty(DIRTY_SIZE));
         disabledProperty().addListener(o -> setOpacity(isDisabled() ? 0.4 : 1.0));
-        targetValueProperty().addListener(o -> rotate(targetValue.get()));
         ring.addEventHandler(MouseEvent.MOUSE_PRESSED, e -> { if (isDisabled()) return; touchRotate(e.getSceneX(), e.getSceneY()); });
         ring.addEventHandler(MouseEvent.MOUSE_DRAGGED, e -> { if (isDisabled()) return; touchRotate(e.getSceneX(), e.getSceneY()); });
         ring.addEventHandler(MouseEvent.MOUSE_RELEASED, e -> { if (isDisabled()) return; fireEvent(TARGET_SET_EVENT); });
@@ -361,14 +366,12 @@ public class Regulator extends Region implements RegulatorControl {
                                                .toString());
             symbol.setVisible(true);
         }
-        symbol.setCache(false);
-        resize();
-        symbol.setCache(true);
+        markDirty(DIRTY_SIZE);
     }
 
     public void setIcon(final Ikon ICON) {
         icon.setIconCode(ICON);
-        resize();
+        markDirty(DIRTY_SIZE);
     }
 
     private <T extends Number> T clamp(final T MIN, final T MAX, final T VALUE) {
@@ -432,7 +435,6 @@ public class Regulator extends Region implements RegulatorControl {
             barArc.setRadiusX(size * 0.46);
             barArc.setRadiusY(size * 0.46);
             barArc.setStrokeWidth(size * 0.04);
-            drawBar(targetValue.get());
 
             double shadowRadius = clamp(1.0, 2.0, size * 0.004);
             dropShadow.setRadius(shadowRadius);
@@ -475,22 +477,49 @@ public class Regulator extends Region implements RegulatorControl {
 
             iconPane.setPrefSize(size * 0.112, size * 0.112);
             iconPane.relocate((size - iconPane.getPrefWidth()) * 0.5, size * 0.62);
-
-            redraw();
         }
     }
 
+    /**
+     * Marks the given layers as dirty, they will be redrawn once in the next
+     * layout pass no matter how many properties changed in between.
+     */
+    private void markDirty(final int LAYERS) {
+        if (0 == dirty) { requestLayout(); }
+        dirty |= LAYERS;
+    }
+
+    @Override protected void layoutChildren() {
+        redraw();
+        super.layoutChildren();
+    }
+
     private void redraw() {
-        pane.setBackground(new Background(new BackgroundFill(color.get().darker(), new CornerRadii(1024), Insets.EMPTY)));
-        mainCircle.setFill(color.get().darker().darker());
-        ring.setFill(color.get());
-        indicator.setFill(isSelected() ? indicatorColor.get() : color.get().darker());
-        indicator.setStroke(isSelected() ? indicatorColor.get().darker().darker() : color.get().darker().darker());
-        symbol.setBackground(new Background(new BackgroundFill(symbolColor.get(), CornerRadii.EMPTY, Insets.EMPTY)));
-        icon.setFill(iconColor.get());
-        text.setFill(textColor.get());
-        barArc.setStroke(barColor.get());
-        rotate(targetValue.get());
+        int layers = dirty;
+        dirty = 0;
+        if (0 == layers) return;
+
+        // The text size and the bar length depend on the size
+        if ((layers & DIRTY_SIZE) != 0) {
+            resize();
+            layers |= DIRTY_VALUE;
+        }
+        if ((layers & DIRTY_COLOR) != 0) {
+            pane.setBackground(new Background(new BackgroundFill(color.get().darker(), new CornerRadii(1024), Insets.EMPTY)));
+            mainCircle.setFill(color.get().darker().darker());
+            ring.setFill(color.get());
+        }
+        if ((layers & DIRTY_INDICATOR) != 0) {
+            indicatorGlow.setColor(indicatorColor.get());
+            indicator.setFill(isSelected() ? indicatorColor.get() : color.get().darker());
+            indicator.setStroke(isSelected() ? indicatorColor.get().darker().darker() : color.get().darker().darker());
+            indicator.setEffect(isSelected() ? indicatorGlow : null);
+        }
+        if ((layers & DIRTY_SYMBOL) != 0) { symbol.setBackground(new Background(new BackgroundFill(symbolColor.get(), CornerRadii.EMPTY, Insets.EMPTY))); }
+        if ((layers & DIRTY_ICON)   != 0) { icon.setFill(iconColor.get()); }
+        if ((layers & DIRTY_TEXT)   != 0) { text.setFill(textColor.get()); }
+        if ((layers & DIRTY_BAR)    != 0) { barArc.setStroke(barColor.get()); }
+        if ((layers & DIRTY_VALUE)  != 0) { rotate(targetValue.get()); }
     }
 
 
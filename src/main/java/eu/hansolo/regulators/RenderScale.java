@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.regulators;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.value.ChangeListener;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.stage.Window;
+
+
+/**
+ * Tracks the render scale of the window a node is shown in, so rasters can
+ * be calculated at device resolution of the screen the window is placed on.
+ */
+class RenderScale {
+
+    // ******************** Methods *******************************************
+    /**
+     * Returns the render scale of the window the given node is shown in or 1.0
+     * if the node is not part of a window yet.
+     */
+    static double get(final Node NODE) {
+        Scene  scene  = NODE.getScene();
+        Window window = null == scene ? null : scene.getWindow();
+        return null == window ? 1.0 : Math.max(window.getRenderScaleX(), window.getRenderScaleY());
+    }
+
+    /**
+     * Runs the given action whenever the node is moved to another scene or
+     * window or the render scale of its window changes, e.g. when the window
+     * is dragged to a screen with a different scaling.
+     */
+    static void addListener(final Node NODE, final Runnable ACTION) {
+        final InvalidationListener   SCALE_LISTENER  = o -> ACTION.run();
+        final ChangeListener<Window> WINDOW_LISTENER = (o, oldWindow, newWindow) -> {
+            if (null != oldWindow) {
+                oldWindow.renderScaleXProperty().removeListener(SCALE_LISTENER);
+                oldWindow.renderScaleYProperty().removeListener(SCALE_LISTENER);
+            }
+            if (null != newWindow) {
+                newWindow.renderScaleXProperty().addListener(SCALE_LISTENER);
+                newWindow.renderScaleYProperty().addListener(SCALE_LISTENER);
+            }
+            ACTION.run();
+        };
+        final ChangeListener<Scene> SCENE_LISTENER = (o, oldScene, newScene) -> {
+            if (null != oldScene) { oldScene.windowProperty().removeListener(WINDOW_LISTENER); }
+            if (null != newScene) { newScene.windowProperty().addListener(WINDOW_LISTENER); }
+            WINDOW_LISTENER.changed(null, null == oldScene ? null : oldScene.getWindow(), null == newScene ? null : newScene.getWindow());
+        };
+        NODE.sceneProperty().addListener(SCENE_LISTENER);
+        if (null != NODE.getScene()) { SCENE_LISTENER.changed(null, null, NODE.getScene()); }
+    }
+}
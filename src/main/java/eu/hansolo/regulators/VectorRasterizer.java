@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.regulators;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.function.IntUnaryOperator;
+
+
+/**
+ * Vectorized version of the lookup table mapping of the ConicalGradient
+ * rasterizers that uses the jdk.incubator.vector module.
+ * This class must only be loaded if the incubator module is part of the
+ * module graph (e.g. started with --add-modules jdk.incubator.vector), which
+ * is checked by ConicalGradient.isVectorized().
+ */
+class VectorRasterizer {
+    private static final VectorSpecies<Integer> INT_SPECIES   = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short>   SHORT_SPECIES = VectorSpecies.of(short.class, VectorShape.forBitSize(INT_SPECIES.vectorBitSize() / 2));
+
+
+    // ******************** Methods *******************************************
+    static int getLanes() { return INT_SPECIES.length(); }
+
+    /**
+     * Sets BUFFER[i] = LUT[ANGLES[i]] for all i from FROM
+     * (inclusive) to TO (exclusive). Pixels whose entry is marked in SPLIT
+     * will be calculated by the given exact function of i instead.
+     * The INDICES array is used as scratch space and needs at least
+     * getLanes() elements.
+     */
+    static void gather(final int[] BUFFER, final short[] ANGLES, final int FROM, final int TO, final int[] LUT, final int[] SPLIT, final int[] INDICES, final IntUnaryOperator EXACT) {
+        final int LANES = INT_SPECIES.length();
+
+        int i = FROM;
+        for (int upperBound = TO - LANES ; i <= upperBound ; i += LANES) {
+            IntVector indices = (IntVector) ShortVector.fromArray(SHORT_SPECIES, ANGLES, i).convertShape(VectorOperators.S2I, INT_SPECIES, 0);
+            indices.intoArray(INDICES, 0);
+            IntVector.fromArray(INT_SPECIES, LUT, 0, INDICES, 0).intoArray(BUFFER, i);
+            if (IntVector.fromArray(INT_SPECIES, SPLIT, 0, INDICES, 0).compare(VectorOperators.NE, 0).anyTrue()) {
+                for (int lane = 0 ; lane < LANES ; lane++) {
+                    if (SPLIT[INDICES[lane]] != 0) { BUFFER[i + lane] = EXACT.applyAsInt(i + lane); }
+                }
+            }
+        }
+        for ( ; i < TO ; i++) {
+            BUFFER[i] = SPLIT[ANGLES[i]] != 0 ? EXACT.applyAsInt(i) : LUT[ANGLES[i]];
+        }
+    }
+}
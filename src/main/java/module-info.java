@@ -3,6 +3,7 @@ module eu.hansolo.regulators {
     // Java
     requires java.base;
     requires java.logging;
+    requires static jdk.incubator.vector;
 
     // Java-FX
     requires javafx.base;
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.regulators;
+
+import eu.hansolo.regulators.ConicalGradient.ScaleDirection;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Stop;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Function;
+
+
+/**
+ * Compares the images of all ConicalGradient rasterizers with the images of
+ * the frozen ReferenceConicalGradient for randomized stops, directions,
+ * offsets, rotations and sizes.
+ * Two pixels are equal if no channel of their premultiplied ARGB values
+ * differs by more than the tolerance. An image matches if at most the given
+ * fraction of its pixels is not equal. Pixel buffered images are also
+ * compared after they have been updated in place with new stop colors and
+ * with a rotation. For every failing image an image with the
+ * expected, the actual and the difference (red where the tolerance is
+ * exceeded) side by side will be written to the output directory.
+ * Configured by the system properties golden.seed, golden.cases,
+ * golden.tolerance, golden.outliers and golden.output, exits with 1 if a
+ * comparison failed.
+ */
+public class GoldenImageHarness {
+    private static final int     MIN_SIZE  = 16;
+    private static final int     MAX_SIZE  = 512;
+    private static final int     MAX_STOPS = 16;
+    private final        Random  random;
+    private final        int     cases;
+    private final        int     tolerance;
+    private final        double  outliers;
+    private final        Path    output;
+    private              int     failures;
+
+
+    // ******************** Constructors **************************************
+    public GoldenImageHarness(final long SEED, final int CASES, final int TOLERANCE, final double OUTLIERS, final Path OUTPUT) {
+        random    = new Random(SEED);
+        cases     = CASES;
+        tolerance = TOLERANCE;
+        outliers  = OUTLIERS;
+        output    = OUTPUT;
+        failures  = 0;
+    }
+
+
+    // ******************** Methods *******************************************
+    public static void main(final String[] ARGS) {
+        long   seed      = Long.getLong("golden.seed", 42);
+        int    cases     = Integer.getInteger("golden.cases", 200);
+        int    tolerance = Integer.getInteger("golden.tolerance", 1);
+        double outliers  = Double.parseDouble(System.getProperty("golden.outliers", "0"));
+        Path   output    = Paths.get(System.getProperty("golden.output", "build/golden"));
+
+        System.out.println(String.format(Locale.US, "Golden image check: seed=%d cases=%d tolerance=%d outliers=%.4f vectorized=%b", seed, cases, tolerance, outliers, ConicalGradient.isVectorized()));
+        int failures = new GoldenImageHarness(seed, cases, tolerance, outliers, output).run();
+        System.out.println(0 == failures ? "All rasterizers match the reference" : failures + " comparisons failed, diff images written to " + output.toAbsolutePath());
+        System.exit(0 == failures ? 0 : 1);
+    }
+
+    /**
+     * Runs all cases and returns the number of failed comparisons.
+     */
+    public int run() {
+        runFixedCases();
+        for (int i = 0 ; i < cases ; i++) { runCase(i); }
+        return failures;
+    }
+
+    // Cases that random parameters hit too rarely
+    private void runFixedCases() {
+        // The chord of the rows next to the top and bottom of the inner circle is shorter than one pixel
+        final List<Stop> STOPS = List.of(new Stop(0, Color.RED), new Stop(1, Color.BLUE));
+        ReferenceConicalGradient reference = new ReferenceConicalGradient(49.505, 49.505, ReferenceConicalGradient.ScaleDirection.CLOCKWISE, STOPS);
+        compare("fixed-subpixel-chord-round", 100, 100, getPixels(reference.getRoundImage(100)), getPixels(new ConicalGradient(49.505, 49.505, ScaleDirection.CLOCKWISE, STOPS).getRoundImage(100)));
+    }
+
+    private void runCase(final int CASE) {
+        final List<Stop>     STOPS     = createStops();
+        final boolean        CLOCKWISE = random.nextBoolean();
+        final double         OFFSET    = random.nextInt(4) == 0 ? 0.0 : random.nextDouble();
+        final double         ANGLE     = random.nextInt(3) == 0 ? random.nextDouble() * 360.0 : 0.0;
+        final int            WIDTH     = createSize();
+        final int            HEIGHT    = random.nextBoolean() ? WIDTH : createSize();
+        final int            SIZE      = createSize();
+        // A center of 0, 0 will be placed in the center of the image, other centers may also lie outside of it
+        final boolean        CENTERED  = random.nextBoolean();
+        final double         CENTER_X  = CENTERED ? 0 : (random.nextDouble() * 1.5 - 0.25) * Math.min(WIDTH, SIZE);
+        final double         CENTER_Y  = CENTERED ? 0 : (random.nextDouble() * 1.5 - 0.25) * Math.min(HEIGHT, SIZE);
+        final ScaleDirection DIRECTION = CLOCKWISE ? ScaleDirection.CLOCKWISE : ScaleDirection.COUNTER_CLOCKWISE;
+        final String         NAME      = String.format(Locale.US, "case%03d-%s-off%.3f-rot%.1f-%dx%dpx-%dpx-center%.2fx%.2f-%dstops", CASE, DIRECTION, OFFSET, ANGLE, WIDTH, HEIGHT, SIZE, CENTER_X, CENTER_Y, STOPS.size());
+
+        // The gradients keep the center they used for their first image, so every image gets its own gradient
+        Function<List<Stop>, ReferenceConicalGradient> newReference = stops -> {
+            ReferenceConicalGradient reference = new ReferenceConicalGradient(CENTER_X, CENTER_Y, OFFSET, CLOCKWISE ? ReferenceConicalGradient.ScaleDirection.CLOCKWISE : ReferenceConicalGradient.ScaleDirection.COUNTER_CLOCKWISE, stops);
+            if (Double.compare(ANGLE, 0) != 0) { reference.recalculateWithAngle(ANGLE); }
+            return reference;
+        };
+        Function<List<Stop>, ConicalGradient> newGradient = stops -> {
+            ConicalGradient gradient = new ConicalGradient(CENTER_X, CENTER_Y, OFFSET, DIRECTION, stops);
+            if (Double.compare(ANGLE, 0) != 0) { gradient.recalculateWithAngle(ANGLE); }
+            return gradient;
+        };
+        ReferenceConicalGradient reference      = newReference.apply(STOPS);
+        int[]                    expectedRect   = getPixels(reference.getImage(WIDTH, HEIGHT));
+        int[]                    expectedSquare = getPixels(newReference.apply(STOPS).getImage(SIZE, SIZE));
+        int[]                    expectedRound  = getPixels(newReference.apply(STOPS).getRoundImage(SIZE));
+
+        compare(NAME + "-rect", WIDTH, HEIGHT, expectedRect, getPixels(newGradient.apply(STOPS).getImage(WIDTH, HEIGHT)));
+        compare(NAME + "-round", SIZE, SIZE, expectedRound, getPixels(newGradient.apply(STOPS).getRoundImage(SIZE)));
+
+        ConicalGradient parallel = newGradient.apply(STOPS);
+        parallel.setParallel(true);
+        compare(NAME + "-parallel", WIDTH, HEIGHT, expectedRect, getPixels(parallel.getImage(WIDTH, HEIGHT)));
+
+        ConicalGradient pixelBuffered = newGradient.apply(STOPS);
+        pixelBuffered.setPixelBuffered(true);
+        Image pixelBufferImage = pixelBuffered.getImage(WIDTH, HEIGHT);
+        compare(NAME + "-pixelbuffer", WIDTH, HEIGHT, expectedRect, getPixels(pixelBufferImage));
+
+        // Updates of a pixel buffered gradient write into the image that has been handed out before, new stops replace the rotated ones
+        final List<Stop> RECOLORED = recolorStops(STOPS);
+        ReferenceConicalGradient recoloredReference = new ReferenceConicalGradient(CENTER_X, CENTER_Y, OFFSET, CLOCKWISE ? ReferenceConicalGradient.ScaleDirection.CLOCKWISE : ReferenceConicalGradient.ScaleDirection.COUNTER_CLOCKWISE, RECOLORED);
+        pixelBuffered.setStops(OFFSET, RECOLORED);
+        pixelBuffered.getImage(WIDTH, HEIGHT);
+        compare(NAME + "-pixelbuffer-setstops", WIDTH, HEIGHT, getPixels(recoloredReference.getImage(WIDTH, HEIGHT)), getPixels(pixelBufferImage));
+
+        final double UPDATE_ANGLE = random.nextDouble() * 360.0;
+        recoloredReference.recalculateWithAngle(UPDATE_ANGLE);
+        pixelBuffered.recalculateWithAngle(UPDATE_ANGLE);
+        pixelBuffered.getImage(WIDTH, HEIGHT);
+        compare(NAME + "-pixelbuffer-rotate", WIDTH, HEIGHT, getPixels(recoloredReference.getImage(WIDTH, HEIGHT)), getPixels(pixelBufferImage));
+
+        // The ring only contains the pixels of the band around the center, all others have to be transparent
+        ConicalGradient ring         = newGradient.apply(STOPS);
+        double          innerRadius  = SIZE * 0.5 * random.nextDouble();
+        double          outerRadius  = innerRadius + (SIZE * 0.5 - innerRadius) * random.nextDouble();
+        Image           ringImage    = ring.getRingImage(SIZE, innerRadius, outerRadius);
+        double          centerX      = ring.getCenter()[0];
+        double          centerY      = ring.getCenter()[1];
+        int[]           expectedRing = expectedSquare.clone();
+        for (int y = 0 ; y < SIZE ; y++) {
+            for (int x = 0 ; x < SIZE ; x++) {
+                double distance2 = (x - centerX) * (x - centerX) + (y - centerY) * (y - centerY);
+                if (distance2 < innerRadius * innerRadius || distance2 > outerRadius * outerRadius) { expectedRing[y * SIZE + x] = 0; }
+            }
+        }
+        compare(NAME + "-ring", SIZE, SIZE, expectedRing, getPixels(ringImage));
+
+        // Cached rasters are palette indexed, expanding them must not change a pixel
+        if (Double.compare(ANGLE, 0) == 0 && CENTERED) {
+            compare(NAME + "-cache", WIDTH, HEIGHT, expectedRect, getPixels(GradientCache.getImagePattern(STOPS, DIRECTION, OFFSET, WIDTH, HEIGHT).getImage()));
+            GradientCache.clear();
+        }
+
+        // Every rotation recalculates the current stops, so the rotations have to add up like in the reference
+        ConicalGradient rotated = newGradient.apply(STOPS);
+        for (int i = 0 ; i < 3 ; i++) {
+            double angle = random.nextDouble() * 360.0;
+            reference.recalculateWithAngle(angle);
+            rotated.recalculateWithAngle(angle);
+        }
+        compare(NAME + "-rotate-repeated", WIDTH, HEIGHT, getPixels(reference.getImage(WIDTH, HEIGHT)), getPixels(rotated.getImage(WIDTH, HEIGHT)));
+    }
+
+    private int createSize() { return MIN_SIZE + random.nextInt(MAX_SIZE - MIN_SIZE + 1); }
+
+    private List<Stop> createStops() {
+        int        count = 1 + random.nextInt(MAX_STOPS);
+        List<Stop> stops = new ArrayList<>(count);
+        for (int i = 0 ; i < count ; i++) {
+            double offset  = random.nextInt(5) == 0 ? random.nextInt(5) * 0.25 : random.nextDouble();
+            double opacity = random.nextInt(4) == 0 ? random.nextDouble() : 1.0;
+            stops.add(new Stop(offset, Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256), opacity)));
+        }
+        return stops;
+    }
+
+    // Keeps the offsets and opacities and only changes the colors of some of the stops
+    private List<Stop> recolorStops(final List<Stop> STOPS) {
+        List<Stop> stops = new ArrayList<>(STOPS.size());
+        for (Stop stop : STOPS) {
+            Color color = stop.getColor();
+            stops.add(random.nextBoolean() ? stop : new Stop(stop.getOffset(), Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256), color.getOpacity())));
+        }
+        return stops;
+    }
+
+    private void compare(final String NAME, final int WIDTH, final int HEIGHT, final int[] EXPECTED, final int[] ACTUAL) {
+        int[] diff     = new int[EXPECTED.length];
+        int   maxDelta = 0;
+        int   failed   = 0;
+        for (int i = 0 ; i < EXPECTED.length ; i++) {
+            int delta = getMaxChannelDelta(EXPECTED[i], ACTUAL[i]);
+            maxDelta  = Math.max(maxDelta, delta);
+            if (delta > tolerance) {
+                failed++;
+                diff[i] = 0xFFFF0000;
+            } else {
+                int gray = Math.min(255, delta * 64);
+                diff[i]  = 0xFF000000 | gray << 16 | gray << 8 | gray;
+            }
+        }
+        if (failed <= outliers * EXPECTED.length) return;
+
+        failures++;
+        System.out.println(String.format(Locale.US, "FAILED %s: %d of %d pixels differ by more than %d, max difference %d", NAME, failed, EXPECTED.length, tolerance, maxDelta));
+        writeDiffImage(NAME, WIDTH, HEIGHT, EXPECTED, ACTUAL, diff);
+    }
+
+    private static int getMaxChannelDelta(final int EXPECTED, final int ACTUAL) {
+        int delta = 0;
+        for (int shift = 0 ; shift < 32 ; shift += 8) {
+            delta = Math.max(delta, Math.abs((EXPECTED >>> shift & 0xFF) - (ACTUAL >>> shift & 0xFF)));
+        }
+        return delta;
+    }
+
+    private void writeDiffImage(final String NAME, final int WIDTH, final int HEIGHT, final int[] EXPECTED, final int[] ACTUAL, final int[] DIFF) {
+        BufferedImage image = new BufferedImage(3 * WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+        image.setRGB(0, 0, WIDTH, HEIGHT, EXPECTED, 0, WIDTH);
+        image.setRGB(WIDTH, 0, WIDTH, HEIGHT, ACTUAL, 0, WIDTH);
+        image.setRGB(2 * WIDTH, 0, WIDTH, HEIGHT, DIFF, 0, WIDTH);
+        try {
+            Files.createDirectories(output);
+            ImageIO.write(image, "png", output.resolve(NAME + ".png").toFile());
+        } catch (IOException e) {
+            System.out.println("Could not write diff image for " + NAME + ": " + e.getMessage());
+        }
+    }
+
+    private static int[] getPixels(final Image IMAGE) {
+        int   width  = (int) IMAGE.getWidth();
+        int   height = (int) IMAGE.getHeight();
+        int[] pixels = new int[width * height];
+        IMAGE.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), pixels, 0, width);
+        return pixels;
+    }
+}